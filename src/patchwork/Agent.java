@@ -0,0 +1,24 @@
+package patchwork;
+
+/**
+ * A player that chooses its moves without a human, from a headless
+ * {@link GameState}.
+ */
+public interface Agent {
+    /**
+     * Chooses a move for the player to move.
+     *
+     * @param state The current state; implementations must not modify it.
+     * @return A legal move of the state.
+     */
+    Move chooseMove(GameState state);
+
+    /**
+     * Tells the agent that its opponent is about to choose a move, so that it can
+     * use the opponent's thinking time. The default implementation does nothing.
+     *
+     * @param state The state in which the opponent moves; implementations must not modify it.
+     */
+    default void ponder(GameState state) {
+    }
+}
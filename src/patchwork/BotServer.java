@@ -0,0 +1,462 @@
+package patchwork;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local HTTP server letting external bots play headless games as JSON. It
+ * runs on the JDK's built-in server, one virtual thread per exchange where the
+ * runtime has them and a cached thread pool otherwise.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li>{@code POST /games?seed=N} creates a game and returns its state;</li>
+ * <li>{@code GET /games/ID} returns the state of a game;</li>
+ * <li>{@code GET /games/ID/moves} lists the legal moves;</li>
+ * <li>{@code POST /games/ID/moves} with {@code {"move":CODE}} plays a move;</li>
+ * <li>{@code DELETE /games/ID} forgets a game;</li>
+ * <li>{@code POST /batch} with {@code [{"game":ID,"move":CODE},...]} plays a
+ * move in each of many games and returns one result per move.</li>
+ * </ul>
+ * Moves are exchanged in their packed form, {@link Move#encode()}. Responses
+ * are streamed through a {@link JsonWriter} straight into the chunked response
+ * body.
+ * <p>
+ * A game no request has touched for the idle timeout is forgotten, and a
+ * finished one after a tenth of it. Expired games are swept when games are
+ * created, at most once per tenth of the timeout.
+ */
+public final class BotServer implements AutoCloseable {
+    private static final int MAX_BODY = 1 << 24; // Largest request body, in bytes.
+    private static final long DEFAULT_IDLE_MILLIS = 10 * 60 * 1000; // Default idle timeout of a game.
+
+    private final PatchCatalog catalog; // The patches of the games.
+    private final int trackLength; // The number of positions of the time track.
+    private final HttpServer server; // The HTTP server.
+    private final ExecutorService executor; // Runs the exchanges.
+    private final long idleNanos; // Time after which an untouched game is forgotten.
+    private final Map<Long, LiveGame> games = new ConcurrentHashMap<>(); // Live games by identifier.
+    private final AtomicLong nextId = new AtomicLong(1); // Identifier of the next game.
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime()); // Earliest time of the next sweep.
+
+    // A game and the time of the last request that touched it.
+    private static final class LiveGame {
+        private final GameState state; // The game; requests synchronize on it.
+        private volatile long touched = System.nanoTime(); // System.nanoTime() of the last request.
+
+        private LiveGame(GameState state) {
+            this.state = state;
+        }
+    }
+
+    /**
+     * Creates a server forgetting games idle for ten minutes; it does not
+     * accept connections until started.
+     *
+     * @param address     The address to listen on.
+     * @param catalog     The patches of the games.
+     * @param trackLength The number of positions of the time track.
+     * @throws IOException              if the address cannot be bound.
+     * @throws IllegalArgumentException if the track is empty.
+     */
+    public BotServer(InetSocketAddress address, PatchCatalog catalog, int trackLength) throws IOException {
+        this(address, catalog, trackLength, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * Creates a server; it does not accept connections until started.
+     *
+     * @param address     The address to listen on.
+     * @param catalog     The patches of the games.
+     * @param trackLength The number of positions of the time track.
+     * @param idleMillis  The time after which a game no request touched is forgotten.
+     * @throws IOException              if the address cannot be bound.
+     * @throws IllegalArgumentException if the track is empty or the timeout is not positive.
+     */
+    public BotServer(InetSocketAddress address, PatchCatalog catalog, int trackLength, long idleMillis)
+            throws IOException {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (trackLength < 1) {
+            throw new IllegalArgumentException("Track length must be at least 1");
+        }
+        if (idleMillis < 1) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        this.trackLength = trackLength;
+        this.idleNanos = idleMillis * 1_000_000;
+        this.server = HttpServer.create(address, 1024);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/games", this::handleGames);
+        server.createContext("/batch", this::handleBatch);
+    }
+
+    // Uses virtual threads when the runtime has them (Java 21 and later), found by reflection.
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                var thread = new Thread(task, "bot-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return The bound address.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns the number of live games.
+     *
+     * @return The game count.
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Stops the server, letting exchanges in progress finish for up to a second.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    private void handleGames(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var parts = exchange.getRequestURI().getPath().split("/");
+            var method = exchange.getRequestMethod();
+            if (parts.length == 2 && method.equals("POST")) {
+                createGame(exchange);
+                return;
+            }
+            if (parts.length < 3 || parts.length > 4 || parts.length == 4 && !parts[3].equals("moves")) {
+                error(exchange, 404, "No such resource");
+                return;
+            }
+            long id;
+            try {
+                id = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                error(exchange, 404, "No such game");
+                return;
+            }
+            var game = games.get(id);
+            if (game == null) {
+                error(exchange, 404, "No such game");
+                return;
+            }
+            game.touched = System.nanoTime();
+            var state = game.state;
+            if (parts.length == 3 && method.equals("GET")) {
+                synchronized (state) {
+                    var json = begin(exchange, 200);
+                    writeState(json, id, state);
+                    json.flush();
+                }
+            } else if (parts.length == 3 && method.equals("DELETE")) {
+                games.remove(id);
+                exchange.sendResponseHeaders(204, -1);
+            } else if (parts.length == 4 && method.equals("GET")) {
+                synchronized (state) {
+                    var json = begin(exchange, 200);
+                    json.beginArray();
+                    for (var move : state.isFinished() ? List.<Move>of() : state.legalMoves()) {
+                        writeMove(json, move);
+                    }
+                    json.endArray().flush();
+                }
+            } else if (parts.length == 4 && method.equals("POST")) {
+                var body = readBody(exchange);
+                if (body == null) {
+                    return;
+                }
+                var request = MoveRequest.parse(body);
+                if (request.length != 2 || request[1] == Long.MIN_VALUE) {
+                    error(exchange, 400, "Expected {\"move\":CODE}");
+                    return;
+                }
+                if (request[1] != (int) request[1]) {
+                    error(exchange, 400, "Not a move code: " + request[1]);
+                    return;
+                }
+                synchronized (state) {
+                    var failure = play(state, (int) request[1]);
+                    if (failure != null) {
+                        error(exchange, 409, failure);
+                        return;
+                    }
+                    var json = begin(exchange, 200);
+                    writeState(json, id, state);
+                    json.flush();
+                }
+            } else {
+                error(exchange, 405, "Method not allowed");
+            }
+        }
+    }
+
+    private void createGame(HttpExchange exchange) throws IOException {
+        long seed = System.nanoTime();
+        var query = exchange.getRequestURI().getQuery();
+        if (query != null && query.startsWith("seed=")) {
+            try {
+                seed = Long.parseLong(query.substring(5));
+            } catch (NumberFormatException e) {
+                error(exchange, 400, "Invalid seed");
+                return;
+            }
+        }
+        sweep();
+        var state = GameState.initial(catalog, DealGenerator.shuffled(catalog.size(), seed), trackLength);
+        long id = nextId.getAndIncrement();
+        games.put(id, new LiveGame(state));
+        synchronized (state) {
+            var json = begin(exchange, 201);
+            writeState(json, id, state);
+            json.flush();
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                error(exchange, 405, "Method not allowed");
+                return;
+            }
+            var body = readBody(exchange);
+            if (body == null) {
+                return;
+            }
+            var pairs = MoveRequest.parse(body);
+            var json = begin(exchange, 200);
+            json.beginArray();
+            for (int i = 0; i + 1 < pairs.length; i += 2) {
+                json.beginObject().name("game").value(pairs[i]);
+                var game = games.get(pairs[i]);
+                long code = pairs[i + 1];
+                if (game == null) {
+                    json.name("error").value("No such game");
+                } else if (code == Long.MIN_VALUE) {
+                    json.name("error").value("Missing move");
+                } else if (code != (int) code) {
+                    json.name("error").value("Not a move code: " + code);
+                } else {
+                    game.touched = System.nanoTime();
+                    var state = game.state;
+                    synchronized (state) {
+                        var failure = play(state, (int) code);
+                        if (failure != null) {
+                            json.name("error").value(failure);
+                        } else {
+                            json.name("currentPlayer").value(state.isFinished() ? -1 : state.getCurrentPlayer())
+                                    .name("finished").value(state.isFinished());
+                        }
+                    }
+                }
+                json.endObject();
+            }
+            json.endArray().flush();
+        }
+    }
+
+    // Forgets expired games, unless another thread swept less than a tenth of the idle timeout ago.
+    private void sweep() {
+        long now = System.nanoTime();
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleNanos / 10)) {
+            return;
+        }
+        games.values().removeIf(game -> {
+            long idle = now - game.touched;
+            if (idle > idleNanos) {
+                return true;
+            }
+            synchronized (game.state) {
+                return game.state.isFinished() && idle > idleNanos / 10;
+            }
+        });
+    }
+
+    // Plays a packed move; returns null on success, or the reason it was refused.
+    private static String play(GameState state, int code) {
+        if (state.isFinished()) {
+            return "The game is over";
+        }
+        var move = Move.decode(code);
+        if (move.encode() != code) {
+            return "Not a move code: " + code;
+        }
+        try {
+            state.apply(move);
+            return null;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return "Illegal move: " + e.getMessage();
+        }
+    }
+
+    // Returns the request body, or null after answering 413 if it is too large.
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        var body = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+        if (body.length > MAX_BODY) {
+            error(exchange, 413, "Request body too large");
+            return null;
+        }
+        return body;
+    }
+
+    private static JsonWriter begin(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192));
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        begin(exchange, status).beginObject().name("error").value(message).endObject().flush();
+    }
+
+    private static void writeState(JsonWriter json, long id, GameState state) throws IOException {
+        json.beginObject().name("id").value(id)
+                .name("currentPlayer").value(state.isFinished() ? -1 : state.getCurrentPlayer())
+                .name("finished").value(state.isFinished())
+                .name("lastPosition").value(state.getLastPosition())
+                .name("players").beginArray();
+        for (int player = 0; player < 2; player++) {
+            json.beginObject().name("buttons").value(state.getButtons(player))
+                    .name("position").value(state.getPosition(player))
+                    .name("income").value(state.getIncome(player))
+                    .name("emptySquares").value(state.getEmptySquares(player))
+                    .name("score").value(state.getScore(player))
+                    .name("quilt").beginArray();
+            for (int row = 0; row < GameState.QUILT_SIZE; row++) {
+                json.value(state.getQuiltRow(player, row));
+            }
+            json.endArray().endObject();
+        }
+        json.endArray().name("marketSize").value(state.getMarketSize()).name("offered").beginArray();
+        for (int slot = 0; slot < state.getOfferedCount(); slot++) {
+            int patchId = state.getOffered(slot);
+            var patch = state.getCatalog().get(patchId);
+            json.beginObject().name("patch").value(patchId).name("cost").value(patch.getCost())
+                    .name("time").value(patch.getTime()).name("income").value(patch.getIncome()).endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    private static void writeMove(JsonWriter json, Move move) throws IOException {
+        json.beginObject().name("code").value(move.encode());
+        if (!move.isAdvance()) {
+            json.name("slot").value(move.getSlot()).name("patch").value(move.getPatchId())
+                    .name("orientation").value(move.getOrientation()).name("row").value(move.getRow())
+                    .name("col").value(move.getCol());
+        }
+        json.endObject();
+    }
+
+    // Reads the "game" and "move" numbers of the objects of a request body, without building a document.
+    private static final class MoveRequest {
+        private MoveRequest() {
+        }
+
+        // Returns game and move pairs, flattened; a missing game is 0 and a missing move Long.MIN_VALUE.
+        static long[] parse(byte[] body) {
+            var pairs = new long[16];
+            int count = 0;
+            long game = 0;
+            long move = Long.MIN_VALUE;
+            boolean inObject = false;
+            for (int i = 0; i < body.length; i++) {
+                byte b = body[i];
+                if (b == '{') {
+                    inObject = true;
+                    game = 0;
+                    move = Long.MIN_VALUE;
+                } else if (b == '}' && inObject) {
+                    if (count + 2 > pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[count++] = game;
+                    pairs[count++] = move;
+                    inObject = false;
+                } else if (b == '"' && inObject) {
+                    int end = i + 1;
+                    while (end < body.length && body[end] != '"') {
+                        end++;
+                    }
+                    boolean isGame = end - i - 1 == 4 && body[i + 1] == 'g' && body[i + 2] == 'a'
+                            && body[i + 3] == 'm' && body[i + 4] == 'e';
+                    boolean isMove = end - i - 1 == 4 && body[i + 1] == 'm' && body[i + 2] == 'o'
+                            && body[i + 3] == 'v' && body[i + 4] == 'e';
+                    i = end;
+                    int j = i + 1;
+                    while (j < body.length && (body[j] == ' ' || body[j] == ':' || body[j] == '\t'
+                            || body[j] == '\r' || body[j] == '\n')) {
+                        j++;
+                    }
+                    if ((isGame || isMove) && j < body.length && (body[j] == '-' || body[j] >= '0' && body[j] <= '9')) {
+                        boolean negative = body[j] == '-';
+                        long value = 0;
+                        for (j += negative ? 1 : 0; j < body.length && body[j] >= '0' && body[j] <= '9'; j++) {
+                            // Saturates, so that an overlong number cannot wrap around to a valid one.
+                            value = value > (Long.MAX_VALUE - 9) / 10 ? Long.MAX_VALUE : value * 10 + body[j] - '0';
+                        }
+                        if (isGame) {
+                            game = negative ? -value : value;
+                        } else {
+                            move = negative ? -value : value;
+                        }
+                        i = j - 1;
+                    }
+                }
+            }
+            return Arrays.copyOf(pairs, count);
+        }
+    }
+
+    /**
+     * Serves games of the data file patches.
+     *
+     * @param args Optionally the port, 8080 by default, and the track length.
+     * @throws IOException if the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int trackLength = args.length > 1 ? Integer.parseInt(args[1]) : 54;
+        var catalog = PatchCatalog.load(Paths.get("data/dataPatch.data"));
+        var server = new BotServer(new InetSocketAddress("127.0.0.1", port), catalog, trackLength);
+        server.start();
+        System.out.println("Serving bot games on http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+}
@@ -0,0 +1,170 @@
+package patchwork;
+
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Deals market orders, permutations of the catalog identifiers, from explicit
+ * seeds. Every deal is a single Fisher-Yates shuffle driven by a
+ * {@link SplittableRandom}, so a seed always gives the same market.
+ * <p>
+ * A generator numbers the games of a run and derives the deal of each game
+ * from the run's seed and the game index, so games can be dealt in any order
+ * and on any thread. Besides independent random deals it offers two variance
+ * reduction schemes for comparing strategies:
+ * <ul>
+ * <li>{@link Sampling#STRATIFIED} deals rotate a fixed permutation of the
+ * patches through the first market window, each game's window starting where
+ * the previous one ended, so over every {@code size / gcd(size, 3)}
+ * consecutive games each patch is offered first equally often; that is once
+ * per {@code size / 3} games when the size is a multiple of 3. The rest of
+ * each market is shuffled independently.</li>
+ * <li>{@link Sampling#ANTITHETIC} deals come in pairs, the odd game of a pair
+ * receiving the even game's market reversed, so the patches offered early in
+ * one game come late in the other.</li>
+ * </ul>
+ */
+public final class DealGenerator {
+    /**
+     * How the deals of a run relate to each other.
+     */
+    public enum Sampling {
+        /**
+         * Independent random deals.
+         */
+        RANDOM,
+        /**
+         * Deals balancing which patches open the market.
+         */
+        STRATIFIED,
+        /**
+         * Pairs of mirrored deals.
+         */
+        ANTITHETIC
+    }
+
+    private final int size; // The number of patches dealt.
+    private final long seed; // The seed of the run.
+    private final Sampling sampling; // How deals relate to each other.
+    private final int[] strata; // Fixed permutation rotated through the first window, for stratified deals.
+
+    /**
+     * Creates a generator.
+     *
+     * @param size     The number of patches dealt, usually the size of the catalog.
+     * @param seed     The seed of the run.
+     * @param sampling How the deals of the run relate to each other.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public DealGenerator(int size, long seed, Sampling sampling) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size cannot be negative");
+        }
+        this.size = size;
+        this.seed = seed;
+        this.sampling = Objects.requireNonNull(sampling, "Sampling cannot be null");
+        this.strata = sampling == Sampling.STRATIFIED ? shuffled(size, seed) : null;
+    }
+
+    /**
+     * Returns the number of patches dealt.
+     *
+     * @return The size of a deal.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the deal of a game of the run.
+     *
+     * @param game The index of the game.
+     * @return The market order.
+     */
+    public int[] deal(long game) {
+        var order = new int[size];
+        deal(game, order);
+        return order;
+    }
+
+    /**
+     * Writes the deal of a game of the run, without allocating.
+     *
+     * @param game  The index of the game.
+     * @param order The array receiving the market order.
+     * @throws IllegalArgumentException if the array does not have the size of a deal.
+     */
+    public void deal(long game, int[] order) {
+        if (order.length != size) {
+            throw new IllegalArgumentException("Expected an order of " + size + " patches");
+        }
+        switch (sampling) {
+            case RANDOM -> shuffle(order, mix(seed ^ mix(game)));
+            case ANTITHETIC -> {
+                shuffle(order, mix(seed ^ mix(game >>> 1)));
+                if ((game & 1) != 0) {
+                    for (int i = 0, j = size - 1; i < j; i++, j--) {
+                        int swap = order[i];
+                        order[i] = order[j];
+                        order[j] = swap;
+                    }
+                }
+            }
+            default -> {
+                int window = Math.min(GameState.MARKET_WINDOW, size);
+                // Consecutive windows are contiguous, so any size games cover the permutation window times.
+                int first = size == 0 ? 0 : (int) (Math.floorMod(game, (long) size) * window % size);
+                for (int i = 0; i < size; i++) {
+                    order[i] = strata[(first + i) % size];
+                }
+                var random = new SplittableRandom(mix(seed ^ mix(game)));
+                shuffle(order, 0, window, random);
+                shuffle(order, window, size, random);
+            }
+        }
+    }
+
+    /**
+     * Returns the identifiers 0 to size - 1 in the order of a seed.
+     *
+     * @param size The number of patches.
+     * @param seed The seed of the deal.
+     * @return The market order.
+     */
+    public static int[] shuffled(int size, long seed) {
+        var order = new int[size];
+        shuffle(order, seed);
+        return order;
+    }
+
+    /**
+     * Fills an array with the identifiers 0 to length - 1 in the order of a
+     * seed, without allocating anything but the random source.
+     *
+     * @param order The array receiving the market order.
+     * @param seed  The seed of the deal.
+     */
+    public static void shuffle(int[] order, long seed) {
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        shuffle(order, 0, order.length, new SplittableRandom(seed));
+    }
+
+    // Fisher-Yates shuffle of order[from, to).
+    private static void shuffle(int[] order, int from, int to, SplittableRandom random) {
+        for (int i = to - 1; i > from; i--) {
+            int j = from + random.nextInt(i - from + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    // SplitMix64 finalizer; spreads game indexes so neighbouring games get unrelated random sequences.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
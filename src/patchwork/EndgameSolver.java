@@ -0,0 +1,249 @@
+package patchwork;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exact solver for the end of a game. Once few patches or little time remain,
+ * the game tree becomes small enough to be searched to the end: the solver runs
+ * alpha-beta over the rules of {@link GameState} with a transposition table and
+ * move ordering, and returns the best move with the final score margin, or gives
+ * up when its time budget is exhausted. The transposition table only lives for
+ * one solve, so a solver kept for a whole game or session does not grow.
+ */
+public final class EndgameSolver {
+    private static final int EXACT = 0; // The stored value is exact.
+    private static final int LOWER = 1; // The stored value is a lower bound.
+    private static final int UPPER = 2; // The stored value is an upper bound.
+    private static final int CLOCK_MASK = 1023; // The clock is read every 1024 nodes.
+
+    private final int maxRemainingTime; // Solve when the players' remaining time is at most this.
+    private final int maxRemainingPatches; // Solve when the market holds at most this many patches.
+    private final long budgetNanos; // Time budget of one solve.
+    private final Map<Long, Entry> memo = new HashMap<>(); // Transposition table of the current solve.
+    private long deadline; // Deadline of the current solve, from System.nanoTime().
+    private long nodes; // Nodes visited by the current solve.
+    private int rootBest; // Best root move fully searched so far, packed, or -1.
+
+    /**
+     * The outcome of a solve.
+     */
+    public static final class Result {
+        private final Move bestMove;
+        private final int margin;
+        private final boolean proven;
+        private final long nodes;
+
+        private Result(Move bestMove, int margin, boolean proven, long nodes) {
+            this.bestMove = bestMove;
+            this.margin = margin;
+            this.proven = proven;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Returns the best move found, or null if the game is already over. An
+         * unproven result holds the best move among those searched to the end
+         * before the budget ran out, or null if none was.
+         *
+         * @return The best move.
+         */
+        public Move getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Returns the final score margin, from the point of view of the player to
+         * move, reached by perfect play from both sides.
+         *
+         * @return The final score margin; only meaningful if the result is proven.
+         */
+        public int getMargin() {
+            return margin;
+        }
+
+        /**
+         * Returns true if the search completed within its budget, so that the
+         * move and margin are exact.
+         *
+         * @return True if the result is exact.
+         */
+        public boolean isProven() {
+            return proven;
+        }
+
+        /**
+         * Returns the number of positions visited by the search.
+         *
+         * @return The number of nodes.
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        @Override
+        public String toString() {
+            return (proven ? "proven " : "unproven ") + bestMove + " margin " + margin + " (" + nodes + " nodes)";
+        }
+    }
+
+    private static final class Entry {
+        private final int value;
+        private final int flag;
+        private final int bestMove;
+
+        private Entry(int value, int flag, int bestMove) {
+            this.value = value;
+            this.flag = flag;
+            this.bestMove = bestMove;
+        }
+    }
+
+    private static final class OutOfTime extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private OutOfTime() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Creates an endgame solver.
+     *
+     * @param maxRemainingTime    The solver applies when the sum of both players'
+     *                            distances to the end of the track is at most this.
+     * @param maxRemainingPatches The solver applies when the market holds at most
+     *                            this many patches.
+     * @param budgetMillis        The time budget of one solve, in milliseconds.
+     * @throws IllegalArgumentException if a threshold or the budget is negative.
+     */
+    public EndgameSolver(int maxRemainingTime, int maxRemainingPatches, long budgetMillis) {
+        if (maxRemainingTime < 0 || maxRemainingPatches < 0 || budgetMillis < 0) {
+            throw new IllegalArgumentException("Thresholds and budget cannot be negative");
+        }
+        this.maxRemainingTime = maxRemainingTime;
+        this.maxRemainingPatches = maxRemainingPatches;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+    }
+
+    /**
+     * Returns true if a state is close enough to the end for this solver.
+     *
+     * @param state The state to check.
+     * @return True if the state is below one of the thresholds.
+     */
+    public boolean applies(GameState state) {
+        int remainingTime = 2 * state.getLastPosition() - state.getPosition(0) - state.getPosition(1);
+        return remainingTime <= maxRemainingTime || state.getMarketSize() <= maxRemainingPatches;
+    }
+
+    /**
+     * Searches a state to the end of the game.
+     *
+     * @param state The state to solve; it is not modified.
+     * @return The best move and final margin, flagged as unproven if the budget ran out.
+     */
+    public Result solve(GameState state) {
+        return solve(state, Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches a state to the end of the game, giving up at the earlier of the
+     * solver's own budget and a deadline, such as the one of the move being
+     * chosen.
+     *
+     * @param state    The state to solve; it is not modified.
+     * @param deadline The latest time to give up at, from {@link System#nanoTime()}.
+     * @return The best move and final margin, flagged as unproven if the time ran out.
+     */
+    public Result solve(GameState state, long deadline) {
+        memo.clear();
+        nodes = 0;
+        rootBest = -1;
+        long start = System.nanoTime();
+        this.deadline = deadline - start < budgetNanos ? deadline : start + budgetNanos;
+        int sign = state.getCurrentPlayer() == 0 ? 1 : -1;
+        if (state.isFinished()) {
+            return new Result(null, sign * state.getScoreMargin(), true, 0);
+        }
+        try {
+            int value = search(state, 0, Integer.MIN_VALUE + 1, Integer.MAX_VALUE);
+            var entry = memo.get(state.hash());
+            var best = entry == null ? Move.ADVANCE : Move.decode(entry.bestMove);
+            return new Result(best, sign * value, true, nodes);
+        } catch (OutOfTime e) {
+            return new Result(rootBest < 0 ? null : Move.decode(rootBest), 0, false, nodes);
+        }
+    }
+
+    /**
+     * Forgets the positions stored by the last solve, releasing their memory
+     * before the next one.
+     */
+    public void clear() {
+        memo.clear();
+    }
+
+    // Returns the final margin of player 0; player 0 maximizes, player 1 minimizes.
+    private int search(GameState state, int ply, int alpha, int beta) {
+        if (state.isFinished()) {
+            return state.getScoreMargin();
+        }
+        if ((++nodes & CLOCK_MASK) == 0 && System.nanoTime() > deadline) {
+            throw new OutOfTime();
+        }
+        long key = state.hash();
+        var entry = memo.get(key);
+        int hashMove = -1;
+        if (entry != null) {
+            if (entry.flag == EXACT
+                    || entry.flag == LOWER && entry.value >= beta
+                    || entry.flag == UPPER && entry.value <= alpha) {
+                return entry.value;
+            }
+            hashMove = entry.bestMove;
+        }
+
+        boolean maximizing = state.getCurrentPlayer() == 0;
+        int originalAlpha = alpha;
+        int originalBeta = beta;
+        int best = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestMove = 0;
+        for (var move : orderedMoves(state, hashMove)) {
+            var child = state.copy();
+            child.apply(move);
+            int value = search(child, ply + 1, alpha, beta);
+            if (maximizing ? value > best : value < best) {
+                best = value;
+                bestMove = move.encode();
+                if (ply == 0) {
+                    rootBest = bestMove;
+                }
+            }
+            if (maximizing) {
+                alpha = Math.max(alpha, value);
+            } else {
+                beta = Math.min(beta, value);
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        int flag = best <= originalAlpha ? UPPER : best >= originalBeta ? LOWER : EXACT;
+        memo.put(key, new Entry(best, flag, bestMove));
+        return best;
+    }
+
+    // The stored best move first, then purchases by square gain per button spent, then advancing.
+    private static List<Move> orderedMoves(GameState state, int hashMove) {
+        var moves = state.legalMoves();
+        var catalog = state.getCatalog();
+        moves.sort(Comparator.comparingInt((Move m) -> m.encode() == hashMove ? 0 : 1)
+                .thenComparingInt(m -> m.isAdvance() ? Integer.MAX_VALUE
+                        : catalog.get(m.getPatchId()).getCost() - 2 * catalog.get(m.getPatchId()).getArea()));
+        return moves;
+    }
+}
@@ -0,0 +1,76 @@
+package patchwork;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers whether a patch fits anywhere on a headless quilt. Every placement
+ * of every orientation of a patch is precomputed once as an 81-bit mask over
+ * two longs, kept by the {@link PatchCatalog}, so a query is a scan of
+ * and-tests instead of trial placements. {@link GameState} classifies its
+ * market with it.
+ * <p>
+ * Answers are not kept: after every move the patchwork asked about has
+ * changed, so most queries would miss and a scan is cheaper than a lookup.
+ */
+final class FitCache {
+    private static final int SIZE = GameState.QUILT_SIZE;
+
+    private FitCache() {
+    }
+
+    // Builds the placement masks of the orientations of a patch on a 9x9 board, low and high longs interleaved.
+    static long[] placementMasks(List<PatchOrientation> orientations) {
+        var masks = new long[16];
+        int count = 0;
+        for (var orientation : orientations) {
+            for (int row = 0; row + orientation.getHeight() <= SIZE; row++) {
+                for (int col = 0; col + orientation.getWidth() <= SIZE; col++) {
+                    long low = 0;
+                    long high = 0;
+                    for (int i = 0; i < orientation.getHeight(); i++) {
+                        int shift = (row + i) * SIZE + col;
+                        long bits = orientation.getRowMask(i);
+                        low |= shift < 64 ? bits << shift : 0;
+                        high |= shift + SIZE > 64 ? (shift >= 64 ? bits << (shift - 64) : bits >>> (64 - shift)) : 0;
+                    }
+                    if (count + 2 > masks.length) {
+                        masks = Arrays.copyOf(masks, masks.length * 2);
+                    }
+                    masks[count++] = low;
+                    masks[count++] = high;
+                }
+            }
+        }
+        return Arrays.copyOf(masks, count);
+    }
+
+    // Squares 0 to 63 of a 9x9 board given one mask per row.
+    static long lowSquares(long[] rows) {
+        long low = 0;
+        for (int row = 0; row * SIZE < 64; row++) {
+            low |= rows[row] << (row * SIZE);
+        }
+        return low;
+    }
+
+    // Squares 64 to 80 of a 9x9 board given one mask per row.
+    static long highSquares(long[] rows) {
+        long high = 0;
+        for (int row = 64 / SIZE; row < SIZE; row++) {
+            int shift = row * SIZE;
+            high |= shift >= 64 ? rows[row] << (shift - 64) : rows[row] >>> (64 - shift);
+        }
+        return high;
+    }
+
+    // True if one of the placements, as built by placementMasks, covers no occupied square of the board.
+    static boolean anyFree(long[] placements, long low, long high) {
+        for (int i = 0; i < placements.length; i += 2) {
+            if ((placements[i] & low) == 0 && (placements[i + 1] & high) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
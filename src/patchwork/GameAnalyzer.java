@@ -0,0 +1,251 @@
+package patchwork;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Replays directories of {@link GameRecord} files and grades every decision.
+ * At each position with a choice, an engine agent picks its preferred move;
+ * both moves are then valued by a {@link LinearEvaluator}, or by the final
+ * margin when they end the game, and the difference is the score the played
+ * move lost. The engine should prefer the moves the evaluator rates best, as a
+ * {@link LinearAgent} with the same weights does; otherwise the engine's own
+ * move can be the one that loses. Each player gets an accuracy, an average loss
+ * and a count of blunders.
+ * <p>
+ * Files are split across a fork-join pool and each file is streamed one record
+ * at a time, so memory is bounded by the number of worker threads, not the
+ * size of the directory. Engines are not shared between threads.
+ */
+public final class GameAnalyzer {
+    private final PatchCatalog catalog; // The patches the records refer to.
+    private final ThreadLocal<Agent> engines; // The engine of each worker thread.
+    private final double[] weights; // Values the positions.
+    private final double blunderLoss; // Smallest loss counted as a blunder.
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param catalog     The patches the records refer to.
+     * @param engine      Creates the engine agent of a worker thread.
+     * @param weights     The weights of the {@link LinearEvaluator} valuing the moves.
+     * @param blunderLoss The smallest loss of score counted as a blunder.
+     * @throws IllegalArgumentException if the weights do not match the features.
+     */
+    public GameAnalyzer(PatchCatalog catalog, Supplier<? extends Agent> engine, double[] weights, double blunderLoss) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        Objects.requireNonNull(engine, "Engine cannot be null");
+        if (weights.length != LinearEvaluator.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + LinearEvaluator.FEATURE_COUNT + " weights");
+        }
+        this.engines = ThreadLocal.withInitial(engine);
+        this.weights = weights.clone();
+        this.blunderLoss = blunderLoss;
+    }
+
+    /**
+     * Analyzes every regular file of a directory.
+     *
+     * @param directory The directory of record files.
+     * @param pool      The pool running the analysis.
+     * @return The report of each player by name.
+     * @throws IOException              if the directory or a file cannot be read.
+     * @throws IllegalArgumentException if a file is not a record file or holds an illegal move.
+     */
+    public Map<String, PlayerReport> analyze(Path directory, ForkJoinPool pool) throws IOException {
+        List<Path> files;
+        try (var listing = Files.list(directory)) {
+            files = listing.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        try {
+            return pool.invoke(new FileRange(files, 0, files.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Analyzes a range of files, splitting it in halves down to single files.
+    private final class FileRange extends RecursiveTask<Map<String, PlayerReport>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files; // All the files.
+        private final int from; // First file of the range, inclusive.
+        private final int to; // Last file of the range, exclusive.
+
+        FileRange(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<String, PlayerReport> compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                var left = new FileRange(files, from, middle);
+                left.fork();
+                var reports = new FileRange(files, middle, to).compute();
+                for (var entry : left.join().entrySet()) {
+                    reports.merge(entry.getKey(), entry.getValue(), PlayerReport::add);
+                }
+                return reports;
+            }
+            var reports = new TreeMap<String, PlayerReport>();
+            if (from < to) {
+                analyzeFile(files.get(from), reports);
+            }
+            return reports;
+        }
+    }
+
+    private void analyzeFile(Path file, Map<String, PlayerReport> reports) {
+        try (var reader = new GameRecord.Reader(file)) {
+            GameRecord record;
+            while ((record = reader.next()) != null) {
+                try {
+                    analyzeGame(record, reports);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Illegal record in " + file + ": " + e.getMessage(), e);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void analyzeGame(GameRecord record, Map<String, PlayerReport> reports) {
+        var engine = engines.get();
+        var features = new double[LinearEvaluator.FEATURE_COUNT];
+        var state = record.initialState(catalog);
+        for (int i = 0; i < record.getMoveCount(); i++) {
+            if (state.isFinished()) {
+                throw new IllegalArgumentException("Move after the end of the game");
+            }
+            var played = record.getMove(i);
+            if (state.legalMoves().size() > 1) {
+                int mover = state.getCurrentPlayer();
+                var preferred = engine.chooseMove(state);
+                double loss = 0;
+                if (!preferred.equals(played)) {
+                    int sign = mover == 0 ? 1 : -1;
+                    loss = Math.max(0, sign * (valueAfter(state, preferred, features)
+                            - valueAfter(state, played, features)));
+                }
+                reports.computeIfAbsent(record.getAgent(mover), name -> new PlayerReport())
+                        .addDecision(preferred.equals(played), loss, loss > 0 && loss >= blunderLoss);
+            }
+            state.apply(played);
+        }
+    }
+
+    private double valueAfter(GameState state, Move move, double[] features) {
+        var next = state.copy();
+        next.apply(move);
+        if (next.isFinished()) {
+            return next.getScoreMargin();
+        }
+        LinearEvaluator.features(next, features);
+        return LinearEvaluator.evaluate(weights, features);
+    }
+
+    /**
+     * The grades of the decisions of one player.
+     */
+    public static final class PlayerReport {
+        private long decisions; // Positions with a choice.
+        private long matches; // Decisions where the engine's move was played.
+        private double totalLoss; // Sum of the losses.
+        private long blunders; // Decisions losing at least the blunder threshold.
+
+        private void addDecision(boolean match, double loss, boolean blunder) {
+            decisions++;
+            matches += match ? 1 : 0;
+            totalLoss += loss;
+            blunders += blunder ? 1 : 0;
+        }
+
+        private static PlayerReport add(PlayerReport a, PlayerReport b) {
+            a.decisions += b.decisions;
+            a.matches += b.matches;
+            a.totalLoss += b.totalLoss;
+            a.blunders += b.blunders;
+            return a;
+        }
+
+        /**
+         * Returns the number of positions where the player had a choice.
+         *
+         * @return The decision count.
+         */
+        public long getDecisions() {
+            return decisions;
+        }
+
+        /**
+         * Returns the share of decisions where the player played the engine's move.
+         *
+         * @return The accuracy, between 0 and 1, or NaN without decisions.
+         */
+        public double getAccuracy() {
+            return (double) matches / decisions;
+        }
+
+        /**
+         * Returns the average score lost by a decision.
+         *
+         * @return The average loss, or NaN without decisions.
+         */
+        public double getAverageLoss() {
+            return totalLoss / decisions;
+        }
+
+        /**
+         * Returns the number of decisions that lost at least the blunder threshold.
+         *
+         * @return The blunder count.
+         */
+        public long getBlunders() {
+            return blunders;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d decisions, accuracy %.1f%%, average loss %.2f, %d blunders", decisions,
+                    100 * getAccuracy(), getAverageLoss(), blunders);
+        }
+    }
+
+    /**
+     * Analyzes a directory of record files with a {@link LinearAgent} engine
+     * of the given weights and prints a report per player.
+     *
+     * @param args The directory, a weight file written by {@link LinearEvaluator#save}, then optionally
+     *             the blunder threshold.
+     * @throws IOException if a file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: GameAnalyzer <directory> <weights> [blunderLoss]");
+            return;
+        }
+        var catalog = PatchCatalog.load(Paths.get("data/dataPatch.data"));
+        var weights = LinearEvaluator.load(Paths.get(args[1]));
+        double blunderLoss = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+        var analyzer = new GameAnalyzer(catalog, () -> new LinearAgent(weights), weights, blunderLoss);
+        var reports = analyzer.analyze(Paths.get(args[0]), ForkJoinPool.commonPool());
+        for (var entry : reports.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package patchwork;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A per-thread pool of reusable games. A simulation worker acquires a game
+ * reset with a seed, plays it, and releases it, so that after warm-up the same
+ * objects are recycled game after game instead of being allocated anew.
+ * <p>
+ * Each thread has its own free list: acquiring and releasing never contend, and
+ * a game must be released on the thread that acquired it.
+ *
+ * @param <T> The type of the pooled games.
+ */
+public final class GamePool<T> {
+    private final Supplier<T> factory; // Creates a game when the free list is empty.
+    private final ObjLongConsumer<T> resetter; // Resets a game with a seed.
+    private final int capacity; // Maximum number of free games kept per thread.
+    private final ThreadLocal<ArrayDeque<T>> free; // The free games of each thread.
+
+    /**
+     * Creates a pool.
+     *
+     * @param factory  Creates a game when a thread has no free game.
+     * @param resetter Resets a game for a new deal with a seed.
+     * @param capacity The maximum number of free games kept per thread.
+     * @throws IllegalArgumentException if the capacity is less than 1.
+     */
+    public GamePool(Supplier<T> factory, ObjLongConsumer<T> resetter, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.factory = Objects.requireNonNull(factory, "Factory cannot be null");
+        this.resetter = Objects.requireNonNull(resetter, "Resetter cannot be null");
+        this.capacity = capacity;
+        this.free = ThreadLocal.withInitial(() -> new ArrayDeque<>(capacity));
+    }
+
+    /**
+     * Creates a pool of console games between two players, as built by {@link Main}.
+     *
+     * @param size     The size of the time board.
+     * @param fullGame Whether the games use the full set of patches.
+     * @return The pool.
+     */
+    public static GamePool<PatchworkGame> ofConsoleGames(int size, boolean fullGame) {
+        return new GamePool<>(() -> new PatchworkGame(new Player("Player 1", new Patchwork()),
+                new Player("Player 2", new Patchwork()), size, fullGame), PatchworkGame::reset, 4);
+    }
+
+    /**
+     * Creates a pool of headless states whose market is the whole catalog,
+     * shuffled by the seed.
+     *
+     * @param catalog     The patches of the games.
+     * @param trackLength The number of positions of the time track.
+     * @return The pool.
+     */
+    public static GamePool<GameState> ofStates(PatchCatalog catalog, int trackLength) {
+        Objects.requireNonNull(catalog, "Catalog cannot be null");
+        var orders = ThreadLocal.withInitial(() -> new int[catalog.size()]);
+        return new GamePool<>(() -> GameState.initial(catalog, new int[catalog.size()], trackLength),
+                (state, seed) -> {
+                    int[] order = orders.get();
+                    DealGenerator.shuffle(order, seed);
+                    state.reset(order);
+                }, 4);
+    }
+
+    /**
+     * Creates a pool of headless states dealt by a generator; the seed given to
+     * {@link #acquire(long)} is the index of the game in the generator's run.
+     *
+     * @param catalog     The patches of the games.
+     * @param trackLength The number of positions of the time track.
+     * @param deals       The generator of the market orders, dealing the whole catalog.
+     * @return The pool.
+     * @throws IllegalArgumentException if the generator does not deal the whole catalog.
+     */
+    public static GamePool<GameState> ofStates(PatchCatalog catalog, int trackLength, DealGenerator deals) {
+        Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (deals.size() != catalog.size()) {
+            throw new IllegalArgumentException("The generator does not deal the catalog");
+        }
+        var orders = ThreadLocal.withInitial(() -> new int[catalog.size()]);
+        return new GamePool<>(() -> GameState.initial(catalog, new int[catalog.size()], trackLength),
+                (state, game) -> {
+                    int[] order = orders.get();
+                    deals.deal(game, order);
+                    state.reset(order);
+                }, 4);
+    }
+
+    /**
+     * Returns a free game of the calling thread, or a new one, reset with a seed.
+     *
+     * @param seed The seed of the new deal.
+     * @return The game.
+     */
+    public T acquire(long seed) {
+        var game = free.get().pollFirst();
+        if (game == null) {
+            game = factory.get();
+        }
+        resetter.accept(game, seed);
+        return game;
+    }
+
+    /**
+     * Gives a game back to the free list of the calling thread. Games beyond the
+     * capacity of the free list are left to the garbage collector.
+     *
+     * @param game The game to release.
+     */
+    public void release(T game) {
+        Objects.requireNonNull(game, "Game cannot be null");
+        var games = free.get();
+        if (games.size() < capacity) {
+            games.addFirst(game);
+        }
+    }
+}
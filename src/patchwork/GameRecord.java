@@ -0,0 +1,238 @@
+package patchwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The record of a headless game: the players, the deal and every move played,
+ * enough to replay the game through {@link GameState}. Moves are kept packed
+ * as by {@link Move#encode()}.
+ * <p>
+ * Record files hold any number of records after a short header; they are
+ * written by a {@link Writer} and read back one record at a time by a
+ * {@link Reader}.
+ */
+public final class GameRecord {
+    private static final int MAGIC = 0x50574752; // "PWGR"
+    private static final int VERSION = 1;
+
+    private final String[] agents; // Names of the two players.
+    private final int trackLength; // Number of positions of the time track.
+    private final int[] order; // Catalog identifiers of the market, in order.
+    private final int[] moves; // Packed moves, in the order played.
+
+    /**
+     * Creates a record.
+     *
+     * @param agent0      The name of player 0.
+     * @param agent1      The name of player 1.
+     * @param trackLength The number of positions of the time track.
+     * @param order       The catalog identifiers of the market, in order; it is copied.
+     * @param moves       The packed moves, in the order played; they are copied.
+     * @throws IllegalArgumentException if the track is empty.
+     */
+    public GameRecord(String agent0, String agent1, int trackLength, int[] order, int[] moves) {
+        if (trackLength < 1) {
+            throw new IllegalArgumentException("Track length must be at least 1");
+        }
+        this.agents = new String[]{Objects.requireNonNull(agent0, "Agent cannot be null"),
+                Objects.requireNonNull(agent1, "Agent cannot be null")};
+        this.trackLength = trackLength;
+        this.order = order.clone();
+        this.moves = moves.clone();
+    }
+
+    /**
+     * Plays a game between two agents and records it.
+     *
+     * @param catalog     The patches the market order refers to.
+     * @param order       The catalog identifiers of the market, in order.
+     * @param trackLength The number of positions of the time track.
+     * @param agent0      The name of player 0.
+     * @param player0     The agent of player 0.
+     * @param agent1      The name of player 1.
+     * @param player1     The agent of player 1.
+     * @return The record of the finished game.
+     */
+    public static GameRecord play(PatchCatalog catalog, int[] order, int trackLength, String agent0, Agent player0,
+            String agent1, Agent player1) {
+        var state = GameState.initial(catalog, order, trackLength);
+        var moves = new int[64];
+        int count = 0;
+        while (!state.isFinished()) {
+            var move = (state.getCurrentPlayer() == 0 ? player0 : player1).chooseMove(state);
+            state.apply(move);
+            if (count == moves.length) {
+                moves = Arrays.copyOf(moves, count * 2);
+            }
+            moves[count++] = move.encode();
+        }
+        return new GameRecord(agent0, agent1, trackLength, order, Arrays.copyOf(moves, count));
+    }
+
+    /**
+     * Returns the name of a player.
+     *
+     * @param player The player (0 or 1).
+     * @return The name.
+     */
+    public String getAgent(int player) {
+        return agents[player];
+    }
+
+    /**
+     * Returns the number of positions of the time track.
+     *
+     * @return The track length.
+     */
+    public int getTrackLength() {
+        return trackLength;
+    }
+
+    /**
+     * Returns the number of moves played.
+     *
+     * @return The move count.
+     */
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    /**
+     * Returns a move played.
+     *
+     * @param index The index of the move, from 0.
+     * @return The move.
+     */
+    public Move getMove(int index) {
+        return Move.decode(moves[index]);
+    }
+
+    /**
+     * Creates the initial state of the recorded game.
+     *
+     * @param catalog The patches the market order refers to.
+     * @return The new state.
+     * @throws IllegalArgumentException if the deal does not fit the catalog.
+     */
+    public GameState initialState(PatchCatalog catalog) {
+        return GameState.initial(catalog, order, trackLength);
+    }
+
+    private void write(DataOutputStream output) throws IOException {
+        output.writeUTF(agents[0]);
+        output.writeUTF(agents[1]);
+        output.writeShort(trackLength);
+        output.writeShort(order.length);
+        for (int id : order) {
+            output.writeShort(id);
+        }
+        output.writeShort(moves.length);
+        for (int move : moves) {
+            output.writeInt(move);
+        }
+    }
+
+    private static GameRecord read(DataInputStream input) throws IOException {
+        String agent0;
+        try {
+            agent0 = input.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+        var agent1 = input.readUTF();
+        int trackLength = input.readUnsignedShort();
+        var order = new int[input.readUnsignedShort()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = input.readUnsignedShort();
+        }
+        var moves = new int[input.readUnsignedShort()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = input.readInt();
+        }
+        return new GameRecord(agent0, agent1, trackLength, order, moves);
+    }
+
+    /**
+     * Appends records to a record file.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final DataOutputStream output; // The file being written.
+
+        /**
+         * Creates a record file, replacing it if it exists.
+         *
+         * @param file The file.
+         * @throws IOException if the file cannot be created.
+         */
+        public Writer(Path file) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        /**
+         * Appends a record.
+         *
+         * @param record The record.
+         * @throws IOException if the record cannot be written.
+         */
+        public void append(GameRecord record) throws IOException {
+            record.write(output);
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads the records of a record file one at a time.
+     */
+    public static final class Reader implements AutoCloseable {
+        private final DataInputStream input; // The file being read.
+
+        /**
+         * Opens a record file.
+         *
+         * @param file The file.
+         * @throws IOException              if the file cannot be read.
+         * @throws IllegalArgumentException if the file is not a record file.
+         */
+        public Reader(Path file) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    throw new IllegalArgumentException("Not a game record file: " + file);
+                }
+            } catch (IOException | RuntimeException e) {
+                input.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @return The record, or null at the end of the file.
+         * @throws IOException if the file cannot be read.
+         */
+        public GameRecord next() throws IOException {
+            return read(input);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
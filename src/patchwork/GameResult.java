@@ -0,0 +1,172 @@
+package patchwork;
+
+import java.util.Objects;
+
+/**
+ * The outcome of a finished game: who played, and how each player ended.
+ * Players are numbered 0 and 1, as in {@link GameState}.
+ */
+public final class GameResult {
+    private final String[] agents; // Names of the two players.
+    private final int[] buttons; // Final buttons of each player.
+    private final int[] emptySquares; // Empty squares left on each patchwork.
+    private final int[] scores; // Final score of each player.
+    private final long seed; // Seed of the deal, 0 if unknown.
+    private final int turns; // Number of turns played.
+    private final long durationNanos; // Wall-clock duration of the game.
+
+    private GameResult(String[] agents, int[] buttons, int[] emptySquares, int[] scores, long seed, int turns,
+            long durationNanos) {
+        this.agents = agents;
+        this.buttons = buttons;
+        this.emptySquares = emptySquares;
+        this.scores = scores;
+        this.seed = seed;
+        this.turns = turns;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Creates the result of a game between named players.
+     *
+     * @param agent0        The name of player 0.
+     * @param agent1        The name of player 1.
+     * @param buttons0      The final buttons of player 0.
+     * @param buttons1      The final buttons of player 1.
+     * @param emptySquares0 The empty squares left on the patchwork of player 0.
+     * @param emptySquares1 The empty squares left on the patchwork of player 1.
+     * @param score0        The final score of player 0.
+     * @param score1        The final score of player 1.
+     * @return The result.
+     */
+    public static GameResult of(String agent0, String agent1, int buttons0, int buttons1, int emptySquares0,
+            int emptySquares1, int score0, int score1) {
+        var agents = new String[]{Objects.requireNonNull(agent0, "Agent cannot be null"),
+                Objects.requireNonNull(agent1, "Agent cannot be null")};
+        return new GameResult(agents, new int[]{buttons0, buttons1}, new int[]{emptySquares0, emptySquares1},
+                new int[]{score0, score1}, 0, 0, 0);
+    }
+
+    /**
+     * Creates the result of a finished headless game.
+     *
+     * @param state  The finished state.
+     * @param agent0 The name of player 0.
+     * @param agent1 The name of player 1.
+     * @return The result.
+     * @throws IllegalArgumentException if the game is not over.
+     */
+    public static GameResult of(GameState state, String agent0, String agent1) {
+        if (!state.isFinished()) {
+            throw new IllegalArgumentException("The game is not over");
+        }
+        return of(agent0, agent1, state.getButtons(0), state.getButtons(1), state.getEmptySquares(0),
+                state.getEmptySquares(1), state.getScore(0), state.getScore(1));
+    }
+
+    /**
+     * Returns a copy of this result describing how the game was played.
+     *
+     * @param seed          The seed of the deal.
+     * @param turns         The number of turns played.
+     * @param durationNanos The wall-clock duration of the game in nanoseconds.
+     * @return The new result.
+     * @throws IllegalArgumentException if the turns or duration are negative.
+     */
+    public GameResult withPlay(long seed, int turns, long durationNanos) {
+        if (turns < 0 || durationNanos < 0) {
+            throw new IllegalArgumentException("Turns and duration cannot be negative");
+        }
+        return new GameResult(agents, buttons, emptySquares, scores, seed, turns, durationNanos);
+    }
+
+    /**
+     * Returns the name of a player.
+     *
+     * @param player The player (0 or 1).
+     * @return The name.
+     */
+    public String getAgent(int player) {
+        return agents[player];
+    }
+
+    /**
+     * Returns the final buttons of a player.
+     *
+     * @param player The player (0 or 1).
+     * @return The buttons.
+     */
+    public int getButtons(int player) {
+        return buttons[player];
+    }
+
+    /**
+     * Returns the number of empty squares left on the patchwork of a player.
+     *
+     * @param player The player (0 or 1).
+     * @return The empty squares.
+     */
+    public int getEmptySquares(int player) {
+        return emptySquares[player];
+    }
+
+    /**
+     * Returns the final score of a player.
+     *
+     * @param player The player (0 or 1).
+     * @return The score.
+     */
+    public int getScore(int player) {
+        return scores[player];
+    }
+
+    /**
+     * Returns the seed of the deal.
+     *
+     * @return The seed, or 0 if unknown.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of turns played.
+     *
+     * @return The turns, or 0 if unknown.
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Returns the wall-clock duration of the game.
+     *
+     * @return The duration in nanoseconds, or 0 if unknown.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the outcome for player 0: 1 for a win, 0.5 for a tie, 0 for a loss.
+     *
+     * @return The outcome.
+     */
+    public double getOutcome() {
+        return scores[0] > scores[1] ? 1 : scores[0] < scores[1] ? 0 : 0.5;
+    }
+
+    /**
+     * Returns the winner.
+     *
+     * @return The winning player (0 or 1), or -1 for a tie.
+     */
+    public int getWinner() {
+        return scores[0] > scores[1] ? 0 : scores[0] < scores[1] ? 1 : -1;
+    }
+
+    @Override
+    public String toString() {
+        return agents[0] + " " + scores[0] + " - " + scores[1] + " " + agents[1];
+    }
+}
@@ -0,0 +1,744 @@
+package patchwork;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compact, headless position of a two-player Patchwork game, used by bots and
+ * simulations instead of the console-driven {@link PatchworkGame}.
+ * <p>
+ * The rules are those of the board game: the player behind on the time track
+ * moves (on a tie, the one who arrived last); a move either advances just past
+ * the opponent, earning one button per space, or buys one of the next three
+ * patches after the market cursor, pays its cost, places it and moves forward by
+ * its time. The cursor then stands where the bought patch was. The game ends
+ * when both players reach the last position; a player scores their buttons
+ * minus two per empty square of their patchwork.
+ * <p>
+ * The checkpoints of the {@link TimeBoard} are resolved as players move: each
+ * button checkpoint passed pays the player their income, and the first player
+ * to pass a leather checkpoint gets a single-square patch, which is dropped on
+ * the most isolated hole of their patchwork chosen by {@link HoleSelector}.
+ * <p>
+ * Each player also has a market index: bit masks of the offered slots whose
+ * patch they can afford, can place, and both. The masks are refreshed as
+ * buttons, quilts and the market change, so listing the purchases a player can
+ * make is a read of {@link #getBuyableSlots(int)}. Whether a patch fits a
+ * quilt is a scan of the catalog's precomputed placement masks (see
+ * {@link FitCache}), done only when the quilt or the market changed; moves
+ * that only change buttons reclassify affordability alone.
+ */
+public final class GameState {
+    /**
+     * The width and height of a player's patchwork.
+     */
+    public static final int QUILT_SIZE = 9;
+    /**
+     * The number of patches offered after the market cursor.
+     */
+    public static final int MARKET_WINDOW = 3;
+
+    private final PatchCatalog catalog; // The patches the market identifiers refer to.
+    private final int lastPosition; // The last position of the time track.
+    private final int[] paydays; // Button checkpoints of the time track, shared by copies.
+    private final int[] leather; // Leather checkpoints of the time track, shared by copies.
+    private final int[] buttons; // Buttons of each player.
+    private final int[] positions; // Position of each player on the time track.
+    private final int[] income; // Button income of each player's patches.
+    private final long[][] quilts; // Occupancy of each player's patchwork, one mask per row.
+    private final int[] market; // Catalog identifiers of the remaining patches, in market order.
+    private int marketSize; // Number of remaining patches.
+    private int cursor; // Index in market of the first offered patch.
+    private int lastMover; // The player who moved last.
+    private int leatherTaken; // Bit i is set once the leather patch of checkpoint i was taken.
+    private int forcedMover = -1; // The player to move regardless of positions, or -1.
+    private final int[] affordable; // Per player, offered slots whose patch costs at most their buttons.
+    private final int[] placeable; // Per player, offered slots whose patch fits their quilt.
+
+    private GameState(PatchCatalog catalog, int lastPosition, int[] market) {
+        this.catalog = catalog;
+        this.lastPosition = lastPosition;
+        this.paydays = TimeBoard.paydays(lastPosition + 1);
+        this.leather = TimeBoard.leatherCheckpoints(lastPosition + 1);
+        this.buttons = new int[] {5, 5};
+        this.positions = new int[2];
+        this.income = new int[2];
+        this.quilts = new long[2][QUILT_SIZE];
+        this.market = market;
+        this.marketSize = market.length;
+        this.affordable = new int[2];
+        this.placeable = new int[2];
+        refreshMarket(0);
+        refreshMarket(1);
+    }
+
+    private GameState(GameState other) {
+        this.catalog = other.catalog;
+        this.lastPosition = other.lastPosition;
+        this.paydays = other.paydays;
+        this.leather = other.leather;
+        this.buttons = other.buttons.clone();
+        this.positions = other.positions.clone();
+        this.income = other.income.clone();
+        this.quilts = new long[][] {other.quilts[0].clone(), other.quilts[1].clone()};
+        this.market = other.market.clone();
+        this.marketSize = other.marketSize;
+        this.cursor = other.cursor;
+        this.lastMover = other.lastMover;
+        this.leatherTaken = other.leatherTaken;
+        this.forcedMover = other.forcedMover;
+        this.affordable = other.affordable.clone();
+        this.placeable = other.placeable.clone();
+    }
+
+    /**
+     * Creates the initial state of a game.
+     *
+     * @param catalog     The patches the market order refers to.
+     * @param order       The catalog identifiers of the market, in order.
+     * @param trackLength The number of positions of the time track.
+     * @return The new state.
+     * @throws IllegalArgumentException if the track is empty or an identifier is not in the catalog.
+     */
+    public static GameState initial(PatchCatalog catalog, int[] order, int trackLength) {
+        Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (trackLength < 1) {
+            throw new IllegalArgumentException("Track length must be at least 1");
+        }
+        for (int id : order) {
+            if (id < 0 || id >= catalog.size()) {
+                throw new IllegalArgumentException("Unknown patch identifier: " + id);
+            }
+        }
+        return new GameState(catalog, trackLength - 1, order.clone());
+    }
+
+    /**
+     * Copies the buttons, position, income and patchwork of a console player into
+     * this state.
+     *
+     * @param index  The index of the player in this state (0 or 1).
+     * @param player The player to copy.
+     * @throws IllegalArgumentException if the player's patchwork is not {@value #QUILT_SIZE} squares wide and high.
+     */
+    void setPlayer(int index, Player player) {
+        var patchwork = player.getPatchworkPlayer();
+        if (patchwork.getWidth() != QUILT_SIZE || patchwork.getHeight() != QUILT_SIZE) {
+            throw new IllegalArgumentException("Headless states only hold " + QUILT_SIZE + "x" + QUILT_SIZE + " quilts");
+        }
+        buttons[index] = player.getButtons();
+        positions[index] = Math.min(player.getPosition(), lastPosition);
+        for (int row = 0; row < QUILT_SIZE; row++) {
+            quilts[index][row] = patchwork.getRowMask(row);
+        }
+        income[index] = patchwork.getIncome();
+        refreshMarket(index);
+    }
+
+    /**
+     * Marks the leather patches a console game has already given away.
+     *
+     * @param mask The taken patches, bit {@code i} standing for the {@code i}-th leather checkpoint.
+     */
+    void setLeatherTaken(int mask) {
+        leatherTaken = mask & ((1 << leather.length) - 1);
+    }
+
+    /**
+     * Puts the state back at the start of a game with a new market order,
+     * reusing its arrays.
+     *
+     * @param order The catalog identifiers of the market, in order.
+     * @throws IllegalArgumentException if the order holds more patches than this
+     *                                  state was created with, or an unknown identifier.
+     */
+    public void reset(int[] order) {
+        if (order.length > market.length) {
+            throw new IllegalArgumentException("Market order is longer than the market of this state");
+        }
+        for (int id : order) {
+            if (id < 0 || id >= catalog.size()) {
+                throw new IllegalArgumentException("Unknown patch identifier: " + id);
+            }
+        }
+        Arrays.fill(buttons, 5);
+        Arrays.fill(positions, 0);
+        Arrays.fill(income, 0);
+        Arrays.fill(quilts[0], 0);
+        Arrays.fill(quilts[1], 0);
+        System.arraycopy(order, 0, market, 0, order.length);
+        marketSize = order.length;
+        cursor = 0;
+        lastMover = 0;
+        leatherTaken = 0;
+        forcedMover = -1;
+        refreshMarket(0);
+        refreshMarket(1);
+    }
+
+    /**
+     * Overwrites this state with another state of the same game, reusing its
+     * arrays; searches use it to avoid allocating a copy per node.
+     *
+     * @param other The state to copy.
+     * @throws IllegalArgumentException if the states do not share their catalog and track.
+     */
+    public void copyFrom(GameState other) {
+        if (other.catalog != catalog || other.lastPosition != lastPosition || other.market.length > market.length) {
+            throw new IllegalArgumentException("States of different games");
+        }
+        System.arraycopy(other.buttons, 0, buttons, 0, 2);
+        System.arraycopy(other.positions, 0, positions, 0, 2);
+        System.arraycopy(other.income, 0, income, 0, 2);
+        System.arraycopy(other.quilts[0], 0, quilts[0], 0, QUILT_SIZE);
+        System.arraycopy(other.quilts[1], 0, quilts[1], 0, QUILT_SIZE);
+        System.arraycopy(other.market, 0, market, 0, other.marketSize);
+        marketSize = other.marketSize;
+        cursor = other.cursor;
+        lastMover = other.lastMover;
+        leatherTaken = other.leatherTaken;
+        forcedMover = other.forcedMover;
+        for (int p = 0; p < 2; p++) {
+            affordable[p] = other.affordable[p];
+            placeable[p] = other.placeable[p];
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a state packed by {@link #writeTo(ByteBuffer, int)}.
+     *
+     * @param marketCapacity The largest market the packed states may hold.
+     * @return The size of a packed state.
+     */
+    static int packedSize(int marketCapacity) {
+        return 36 + marketCapacity;
+    }
+
+    /**
+     * Packs this state at an absolute offset of a buffer: buttons as shorts,
+     * positions, income, movers, cursor, market size and taken leather
+     * patches as unsigned bytes, each patchwork as 81 bits in a long and an int, then the market as one byte
+     * per patch identifier. The movers byte holds the last mover in bit 0 and
+     * the forced mover plus one in bits 1 and 2.
+     *
+     * @param buffer The buffer to write.
+     * @param offset The offset of the packed state.
+     */
+    void writeTo(ByteBuffer buffer, int offset) {
+        if (catalog.size() > 256 || lastPosition > 255) {
+            throw new IllegalStateException("State too large to be packed");
+        }
+        buffer.putShort(offset, (short) buttons[0]);
+        buffer.putShort(offset + 2, (short) buttons[1]);
+        buffer.put(offset + 4, (byte) positions[0]);
+        buffer.put(offset + 5, (byte) positions[1]);
+        buffer.put(offset + 6, (byte) income[0]);
+        buffer.put(offset + 7, (byte) income[1]);
+        buffer.put(offset + 8, (byte) (lastMover | (forcedMover + 1) << 1));
+        buffer.put(offset + 9, (byte) cursor);
+        buffer.put(offset + 10, (byte) marketSize);
+        buffer.put(offset + 11, (byte) leatherTaken);
+        for (int p = 0; p < 2; p++) {
+            long low = 0;
+            int high = 0;
+            for (int row = 0; row < QUILT_SIZE; row++) {
+                if (row < 7) {
+                    low |= quilts[p][row] << (QUILT_SIZE * row);
+                } else {
+                    high |= (int) quilts[p][row] << (QUILT_SIZE * (row - 7));
+                }
+            }
+            buffer.putLong(offset + 12 + 12 * p, low);
+            buffer.putInt(offset + 20 + 12 * p, high);
+        }
+        for (int i = 0; i < marketSize; i++) {
+            buffer.put(offset + 36 + i, (byte) market[i]);
+        }
+    }
+
+    /**
+     * Overwrites this state with a state packed by {@link #writeTo(ByteBuffer, int)}.
+     *
+     * @param buffer The buffer to read.
+     * @param offset The offset of the packed state.
+     * @throws IllegalArgumentException if the packed market is larger than the market of this state.
+     */
+    void readFrom(ByteBuffer buffer, int offset) {
+        int size = buffer.get(offset + 10) & 0xff;
+        if (size > market.length) {
+            throw new IllegalArgumentException("Packed market is larger than the market of this state");
+        }
+        buttons[0] = buffer.getShort(offset);
+        buttons[1] = buffer.getShort(offset + 2);
+        positions[0] = buffer.get(offset + 4) & 0xff;
+        positions[1] = buffer.get(offset + 5) & 0xff;
+        income[0] = buffer.get(offset + 6) & 0xff;
+        income[1] = buffer.get(offset + 7) & 0xff;
+        int movers = buffer.get(offset + 8);
+        lastMover = movers & 1;
+        forcedMover = (movers >>> 1 & 3) - 1;
+        cursor = buffer.get(offset + 9) & 0xff;
+        marketSize = size;
+        leatherTaken = buffer.get(offset + 11) & 0xff;
+        long rowMask = (1L << QUILT_SIZE) - 1;
+        for (int p = 0; p < 2; p++) {
+            long low = buffer.getLong(offset + 12 + 12 * p);
+            long high = buffer.getInt(offset + 20 + 12 * p);
+            for (int row = 0; row < QUILT_SIZE; row++) {
+                quilts[p][row] = row < 7 ? low >>> (QUILT_SIZE * row) & rowMask
+                        : high >>> (QUILT_SIZE * (row - 7)) & rowMask;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            market[i] = buffer.get(offset + 36 + i) & 0xff;
+        }
+        refreshMarket(0);
+        refreshMarket(1);
+    }
+
+    /**
+     * Returns an independent copy of this state.
+     *
+     * @return The copy.
+     */
+    public GameState copy() {
+        return new GameState(this);
+    }
+
+    /**
+     * Returns the catalog the market identifiers refer to.
+     *
+     * @return The catalog.
+     */
+    public PatchCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Returns the last position of the time track.
+     *
+     * @return The last position.
+     */
+    public int getLastPosition() {
+        return lastPosition;
+    }
+
+    /**
+     * Returns the buttons of a player.
+     *
+     * @param player The player (0 or 1).
+     * @return The buttons of the player.
+     */
+    public int getButtons(int player) {
+        return buttons[player];
+    }
+
+    /**
+     * Returns the position of a player on the time track.
+     *
+     * @param player The player (0 or 1).
+     * @return The position of the player.
+     */
+    public int getPosition(int player) {
+        return positions[player];
+    }
+
+    /**
+     * Returns the button income of a player's patches.
+     *
+     * @param player The player (0 or 1).
+     * @return The income of the player.
+     */
+    public int getIncome(int player) {
+        return income[player];
+    }
+
+    /**
+     * Returns the number of button checkpoints a player has yet to pass, each
+     * of which will pay them their income.
+     *
+     * @param player The player (0 or 1).
+     * @return The number of paydays ahead of the player.
+     */
+    public int getRemainingPaydays(int player) {
+        return TimeBoard.crossed(paydays, positions[player], lastPosition);
+    }
+
+    /**
+     * Returns the number of leather patches still lying on the time track.
+     *
+     * @return The number of leather patches not yet taken.
+     */
+    public int getRemainingLeather() {
+        return leather.length - Integer.bitCount(leatherTaken);
+    }
+
+    /**
+     * Returns the occupancy mask of a row of a player's patchwork.
+     *
+     * @param player The player (0 or 1).
+     * @param row    The row of the patchwork.
+     * @return The occupancy mask of the row.
+     */
+    public long getQuiltRow(int player, int row) {
+        return quilts[player][row];
+    }
+
+    /**
+     * Returns the number of empty squares on a player's patchwork.
+     *
+     * @param player The player (0 or 1).
+     * @return The number of empty squares.
+     */
+    public int getEmptySquares(int player) {
+        int filled = 0;
+        for (long row : quilts[player]) {
+            filled += Long.bitCount(row);
+        }
+        return QUILT_SIZE * QUILT_SIZE - filled;
+    }
+
+    /**
+     * Returns the number of patches left in the market.
+     *
+     * @return The number of remaining patches.
+     */
+    public int getMarketSize() {
+        return marketSize;
+    }
+
+    /**
+     * Returns the index of the market cursor among the remaining patches.
+     *
+     * @return The market cursor.
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Returns the catalog identifier of the patch at an offset after the market
+     * cursor.
+     *
+     * @param slot The offset after the cursor.
+     * @return The identifier of the patch.
+     * @throws IllegalArgumentException if the market has fewer patches than the offset.
+     */
+    public int getOffered(int slot) {
+        if (slot < 0 || slot >= marketSize) {
+            throw new IllegalArgumentException("No patch at market slot " + slot);
+        }
+        return market[(cursor + slot) % marketSize];
+    }
+
+    /**
+     * Returns the number of patches currently offered to the player to move.
+     *
+     * @return The number of offered patches.
+     */
+    public int getOfferedCount() {
+        return Math.min(MARKET_WINDOW, marketSize);
+    }
+
+    /**
+     * Returns the offered slots whose patch a player can afford.
+     *
+     * @param player The player (0 or 1).
+     * @return The slots, bit {@code slot} set when affordable.
+     */
+    public int getAffordableSlots(int player) {
+        return affordable[player];
+    }
+
+    /**
+     * Returns the offered slots whose patch fits somewhere on a player's
+     * patchwork, in some orientation.
+     *
+     * @param player The player (0 or 1).
+     * @return The slots, bit {@code slot} set when placeable.
+     */
+    public int getPlaceableSlots(int player) {
+        return placeable[player];
+    }
+
+    /**
+     * Returns the offered slots a player could buy: affordable and placeable.
+     *
+     * @param player The player (0 or 1).
+     * @return The slots, bit {@code slot} set when the patch can be bought.
+     */
+    public int getBuyableSlots(int player) {
+        return affordable[player] & placeable[player];
+    }
+
+    // Reclassifies the offered slots for a player, after their quilt or the market changed.
+    private void refreshMarket(int player) {
+        long low = FitCache.lowSquares(quilts[player]);
+        long high = FitCache.highSquares(quilts[player]);
+        int canPlace = 0;
+        for (int slot = 0; slot < getOfferedCount(); slot++) {
+            if (FitCache.anyFree(catalog.placements[market[(cursor + slot) % marketSize]], low, high)) {
+                canPlace |= 1 << slot;
+            }
+        }
+        placeable[player] = canPlace;
+        refreshAffordable(player);
+    }
+
+    // Reclassifies the offered slots a player can pay for, after their buttons changed.
+    private void refreshAffordable(int player) {
+        int canAfford = 0;
+        for (int slot = 0; slot < getOfferedCount(); slot++) {
+            if (catalog.cost[market[(cursor + slot) % marketSize]] <= buttons[player]) {
+                canAfford |= 1 << slot;
+            }
+        }
+        affordable[player] = canAfford;
+    }
+
+    /**
+     * Makes a player move next regardless of the time track, for the next move
+     * only. Console games alternate turns instead of letting the player behind
+     * move, and use this to hand their positions to agents.
+     *
+     * @param player The player to move next (0 or 1).
+     */
+    void forceCurrentPlayer(int player) {
+        forcedMover = player;
+    }
+
+    // True if the next move was given to a player by forceCurrentPlayer, as in console snapshots.
+    boolean isMoverForced() {
+        return forcedMover >= 0;
+    }
+
+    /**
+     * Returns the player who moves next: the one behind on the time track, or
+     * on a tie the one who arrived last.
+     *
+     * @return The player to move (0 or 1).
+     */
+    public int getCurrentPlayer() {
+        if (forcedMover >= 0) {
+            return forcedMover;
+        }
+        if (positions[0] != positions[1]) {
+            return positions[0] < positions[1] ? 0 : 1;
+        }
+        return lastMover;
+    }
+
+    /**
+     * Returns true once both players have reached the end of the time track.
+     *
+     * @return True if the game is over.
+     */
+    public boolean isFinished() {
+        return positions[0] == lastPosition && positions[1] == lastPosition;
+    }
+
+    /**
+     * Returns the score of a player if the game ended now: buttons minus two per
+     * empty square.
+     *
+     * @param player The player (0 or 1).
+     * @return The score of the player.
+     */
+    public int getScore(int player) {
+        return buttons[player] - 2 * getEmptySquares(player);
+    }
+
+    /**
+     * Returns the score of player 0 minus the score of player 1.
+     *
+     * @return The score margin of player 0.
+     */
+    public int getScoreMargin() {
+        return getScore(0) - getScore(1);
+    }
+
+    /**
+     * Returns the legal moves of the player to move, advance first.
+     *
+     * @return The legal moves, empty once the game is over.
+     */
+    public List<Move> legalMoves() {
+        var moves = new ArrayList<Move>();
+        if (isFinished()) {
+            return moves;
+        }
+        moves.add(Move.ADVANCE);
+        int player = getCurrentPlayer();
+        long[] quilt = quilts[player];
+        for (int slots = getBuyableSlots(player); slots != 0; slots &= slots - 1) {
+            int slot = Integer.numberOfTrailingZeros(slots);
+            int id = getOffered(slot);
+            var orientations = catalog.orientations(id);
+            for (int o = 0; o < orientations.size(); o++) {
+                var orientation = orientations.get(o);
+                for (int row = 0; row + orientation.getHeight() <= QUILT_SIZE; row++) {
+                    for (int col = 0; col + orientation.getWidth() <= QUILT_SIZE; col++) {
+                        if (orientation.fits(quilt, row, col)) {
+                            moves.add(Move.buy(slot, id, o, row, col));
+                        }
+                    }
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Plays a move for the player to move.
+     *
+     * @param move The move to play.
+     * @throws IllegalStateException    if the game is over.
+     * @throws IllegalArgumentException if the move is not legal in this state.
+     */
+    public void apply(Move move) {
+        Objects.requireNonNull(move, "Move cannot be null");
+        if (isFinished()) {
+            throw new IllegalStateException("The game is over");
+        }
+        int player = getCurrentPlayer();
+        if (move.isAdvance()) {
+            int destination = Math.max(positions[player], Math.min(positions[1 - player] + 1, lastPosition));
+            buttons[player] += destination - positions[player];
+            if (moveTo(player, destination)) {
+                refreshMarket(player);
+            } else {
+                refreshAffordable(player);
+            }
+            return;
+        }
+        if (move.getSlot() >= getOfferedCount() || getOffered(move.getSlot()) != move.getPatchId()) {
+            throw new IllegalArgumentException("The patch is not offered: " + move);
+        }
+        var patch = catalog.get(move.getPatchId());
+        if (patch.getCost() > buttons[player]) {
+            throw new IllegalArgumentException("Not enough buttons for " + move);
+        }
+        var orientation = catalog.orientations(move.getPatchId()).get(move.getOrientation());
+        if (move.getRow() + orientation.getHeight() > QUILT_SIZE || move.getCol() + orientation.getWidth() > QUILT_SIZE
+                || !orientation.fits(quilts[player], move.getRow(), move.getCol())) {
+            throw new IllegalArgumentException("The patch cannot be placed: " + move);
+        }
+        orientation.place(quilts[player], move.getRow(), move.getCol());
+        buttons[player] -= patch.getCost();
+        income[player] += patch.getIncome();
+        removeFromMarket((cursor + move.getSlot()) % marketSize);
+        moveTo(player, Math.min(positions[player] + patch.getTime(), lastPosition));
+        refreshMarket(0);
+        refreshMarket(1);
+    }
+
+    private void removeFromMarket(int index) {
+        System.arraycopy(market, index + 1, market, index, marketSize - index - 1);
+        marketSize--;
+        cursor = marketSize == 0 ? 0 : index % marketSize;
+    }
+
+    // Moves a player forward, paying the button checkpoints and taking the leather patches passed;
+    // returns true if a leather patch was added to the quilt.
+    private boolean moveTo(int player, int destination) {
+        int from = positions[player];
+        boolean patched = false;
+        buttons[player] += income[player] * TimeBoard.crossed(paydays, from, destination);
+        for (int i = 0; i < leather.length; i++) {
+            if (leather[i] > from && leather[i] <= destination && (leatherTaken & 1 << i) == 0) {
+                leatherTaken |= 1 << i;
+                int square = HoleSelector.bestHole(quilts[player], QUILT_SIZE);
+                if (square >= 0) {
+                    quilts[player][square / QUILT_SIZE] |= 1L << (square % QUILT_SIZE);
+                    patched = true;
+                }
+            }
+        }
+        positions[player] = destination;
+        lastMover = player;
+        forcedMover = -1;
+        return patched;
+    }
+
+    /**
+     * Returns a 64-bit hash of the position, suitable as a transposition key.
+     *
+     * @return The hash of the position.
+     */
+    public long hash() {
+        long h = hashPlayers();
+        h = mix(h ^ cursor);
+        for (int i = 0; i < marketSize; i++) {
+            h = mix(h ^ market[i]);
+        }
+        return h;
+    }
+
+    /**
+     * Returns a 64-bit hash of the players and of the next patches of the market
+     * only. Positions that differ further down the market order share this key,
+     * which suits tables of early-game decisions. Like {@link #positionHash()},
+     * it covers the player to move rather than how they were chosen, so a
+     * console snapshot shares the key of the same headless position.
+     *
+     * @param lookahead The number of patches after the cursor to include.
+     * @return The compact hash of the position.
+     */
+    public long hash(int lookahead) {
+        long h = hashPlayers(mix(0x632be59bd9b4e019L + getCurrentPlayer() + 2 * leatherTaken));
+        h = mix(h ^ marketSize);
+        for (int slot = 0; slot < Math.min(lookahead, marketSize); slot++) {
+            h = mix(h ^ getOffered(slot));
+        }
+        return h;
+    }
+
+    /**
+     * Returns a 64-bit hash of the position as seen by the player to move: it
+     * covers who moves rather than how they were chosen, and the market read
+     * from the cursor rather than where the market order starts. A console
+     * snapshot, which forces the mover and starts its market at the cursor,
+     * thus shares the key of the same position reached by {@link #apply}.
+     *
+     * @return The hash of the position.
+     */
+    public long positionHash() {
+        long h = hashPlayers(mix(0x632be59bd9b4e019L + getCurrentPlayer() + 2 * leatherTaken));
+        h = mix(h ^ marketSize);
+        for (int i = 0; i < marketSize; i++) {
+            h = mix(h ^ market[(cursor + i) % marketSize]);
+        }
+        return h;
+    }
+
+    private long hashPlayers() {
+        return hashPlayers(mix(0x9e3779b97f4a7c15L + lastMover + 2 * (forcedMover + 1) + 8 * leatherTaken));
+    }
+
+    private long hashPlayers(long h) {
+        for (int p = 0; p < 2; p++) {
+            h = mix(h ^ buttons[p]);
+            h = mix(h ^ positions[p]);
+            h = mix(h ^ income[p]);
+            for (long row : quilts[p]) {
+                h = mix(h ^ row);
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        return "GameState[buttons=" + Arrays.toString(buttons) + ", positions=" + Arrays.toString(positions)
+                + ", income=" + Arrays.toString(income) + ", market=" + marketSize + ", cursor=" + cursor + "]";
+    }
+}
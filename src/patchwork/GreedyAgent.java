@@ -0,0 +1,173 @@
+package patchwork;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A fast one-ply agent: it buys the patch that best trades squares and income
+ * against buttons and time, placed where it leaves the fewest awkward holes, and
+ * advances when nothing beats the buttons earned by advancing. Purchases of
+ * equal score are split by the value per time of their patch, scored for the
+ * whole market at once by {@link PurchaseScorer}. With a non-zero
+ * exploration rate it sometimes plays a random legal move, which gives varied
+ * self-play games.
+ */
+public final class GreedyAgent implements Agent {
+    private final Random random; // Source of exploration moves.
+    private final double exploration; // Probability of playing a random move.
+    private final QuiltEvaluator evaluator = new QuiltEvaluator(); // Placement quality of candidate moves.
+    private final int[] base = new int[QuiltEvaluator.FEATURE_COUNT]; // Features of the current patchwork.
+    private final int[] features = new int[QuiltEvaluator.FEATURE_COUNT]; // Features after a candidate move.
+    private float[] purchases = new float[0]; // Value per time of each patch, for the current state.
+    private long[] placeable = new long[0]; // Scratch placeable set of the purchase scores.
+
+    /**
+     * Creates a deterministic greedy agent.
+     */
+    public GreedyAgent() {
+        this(new Random(0), 0);
+    }
+
+    /**
+     * Creates a greedy agent that explores.
+     *
+     * @param random      The source of exploration moves.
+     * @param exploration The probability, between 0 and 1, of playing a random legal move.
+     * @throws IllegalArgumentException if the probability is not between 0 and 1.
+     */
+    public GreedyAgent(Random random, double exploration) {
+        if (exploration < 0 || exploration > 1) {
+            throw new IllegalArgumentException("Exploration must be between 0 and 1");
+        }
+        this.random = Objects.requireNonNull(random, "Random cannot be null");
+        this.exploration = exploration;
+    }
+
+    @Override
+    public Move chooseMove(GameState state) {
+        var moves = state.legalMoves();
+        if (moves.isEmpty()) {
+            throw new IllegalStateException("The game is over");
+        }
+        if (exploration > 0 && random.nextDouble() < exploration) {
+            return moves.get(random.nextInt(moves.size()));
+        }
+        int player = state.getCurrentPlayer();
+        evaluator.load(state, player);
+        evaluator.features(base);
+        scorePurchases(state);
+        var best = Move.ADVANCE;
+        int bestScore = Math.min(state.getPosition(1 - player) + 1, state.getLastPosition()) - state.getPosition(player);
+        for (var move : moves) {
+            if (move.isAdvance()) {
+                continue;
+            }
+            int score = score(state, move);
+            if (score > bestScore || score == bestScore && !best.isAdvance()
+                    && purchases[move.getPatchId()] > purchases[best.getPatchId()]) {
+                bestScore = score;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the placement this agent prefers for the patch at a market slot.
+     *
+     * @param state The state; it is not modified.
+     * @param slot  The market slot of the patch to buy.
+     * @return The best purchase of that patch, or null if it cannot be bought.
+     */
+    public Move bestPurchase(GameState state, int slot) {
+        if (state.isFinished() || (state.getBuyableSlots(state.getCurrentPlayer()) & 1 << slot) == 0) {
+            return null;
+        }
+        var moves = state.legalMoves();
+        evaluator.load(state, state.getCurrentPlayer());
+        evaluator.features(base);
+        Move best = null;
+        int bestScore = Integer.MIN_VALUE;
+        for (var move : moves) {
+            if (move.getSlot() != slot) {
+                continue;
+            }
+            int score = score(state, move);
+            if (score > bestScore) {
+                bestScore = score;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the moves this agent rates highest in a state, best first. Other
+     * agents use it to guess the likely moves of an opponent.
+     *
+     * @param state The state; it is not modified.
+     * @param limit The maximum number of moves to return.
+     * @return The best moves, at most {@code limit} of them.
+     */
+    public List<Move> rankMoves(GameState state, int limit) {
+        var moves = state.legalMoves();
+        if (moves.isEmpty()) {
+            return moves;
+        }
+        int player = state.getCurrentPlayer();
+        evaluator.load(state, player);
+        evaluator.features(base);
+        scorePurchases(state);
+        var scores = new int[moves.size()];
+        var indices = new ArrayList<Integer>(moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            var move = moves.get(i);
+            scores[i] = move.isAdvance()
+                    ? Math.min(state.getPosition(1 - player) + 1, state.getLastPosition()) - state.getPosition(player)
+                    : score(state, move);
+            indices.add(i);
+        }
+        indices.sort(Comparator.comparingInt((Integer i) -> -scores[i]).thenComparingDouble(
+                i -> moves.get(i).isAdvance() ? Double.POSITIVE_INFINITY : -purchases[moves.get(i).getPatchId()]));
+        var result = new ArrayList<Move>(Math.min(limit, moves.size()));
+        for (int i = 0; i < Math.min(limit, indices.size()); i++) {
+            result.add(moves.get(indices.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Scores the offered patches of a state as purchases of the player to
+     * move, one pass over the whole catalog.
+     *
+     * @param state The state; it is not modified.
+     * @return The value per time of each patch by identifier, negative infinity
+     *         for patches that are not offered, not affordable or do not fit; the
+     *         array is reused by the next call.
+     */
+    public float[] scorePurchases(GameState state) {
+        int size = state.getCatalog().size();
+        if (purchases.length != size) {
+            purchases = new float[size];
+            placeable = new long[(size + 63) >>> 6];
+        }
+        PurchaseScorer.scoreOffers(state, placeable, purchases);
+        return purchases;
+    }
+
+    // Two points per covered square and the remaining income, minus cost, time and the damage of the placement.
+    private int score(GameState state, Move move) {
+        var catalog = state.getCatalog();
+        var patch = catalog.get(move.getPatchId());
+        var orientation = catalog.orientations(move.getPatchId()).get(move.getOrientation());
+        evaluator.evaluatePlacement(orientation, move.getRow(), move.getCol(), features);
+        int paydays = state.getRemainingPaydays(state.getCurrentPlayer());
+        return 2 * patch.getArea() + patch.getIncome() * paydays - patch.getCost() - patch.getTime() / 2
+                - 3 * (features[QuiltEvaluator.HOLES] - base[QuiltEvaluator.HOLES])
+                - (features[QuiltEvaluator.SMALL_REGIONS] - base[QuiltEvaluator.SMALL_REGIONS])
+                - (features[QuiltEvaluator.EDGE_CONTACT] - base[QuiltEvaluator.EDGE_CONTACT]) / 4;
+    }
+}
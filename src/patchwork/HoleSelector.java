@@ -0,0 +1,69 @@
+package patchwork;
+
+/**
+ * Chooses where to drop a single-square patch, such as a leather patch, on a
+ * patchwork given as one occupancy mask per row. Empty squares are ranked by
+ * isolation: the number of their four sides blocked by a covered square or the
+ * edge of the patchwork. A square blocked on all sides can only ever be filled
+ * by a single square, so it is the best target; after it come squares in
+ * narrow dead ends, whose filling leaves the open area in one piece.
+ * <p>
+ * The counts of a whole row are computed at once: the four neighbour masks are
+ * summed by a bit-sliced adder, one bit of each count per mask.
+ */
+public final class HoleSelector {
+    private HoleSelector() {
+    }
+
+    /**
+     * Returns the most isolated empty square of a patchwork; among equally
+     * isolated squares, the first in row-major order.
+     *
+     * @param rows  The occupancy of the patchwork, one mask per row, bit {@code col} set when covered.
+     * @param width The number of columns of the patchwork, at most 63.
+     * @return The square as {@code row * width + col}, or -1 if the patchwork is full.
+     * @throws IllegalArgumentException if the width is not between 1 and 63.
+     */
+    public static int bestHole(long[] rows, int width) {
+        if (width < 1 || width > 63) {
+            throw new IllegalArgumentException("Width must be between 1 and 63");
+        }
+        long full = (1L << width) - 1;
+        int best = -1;
+        int bestLevel = -1;
+        for (int row = 0; row < rows.length && bestLevel < 4; row++) {
+            long empty = ~rows[row] & full;
+            if (empty == 0) {
+                continue;
+            }
+            long up = row == 0 ? full : rows[row - 1];
+            long down = row == rows.length - 1 ? full : rows[row + 1];
+            long left = (rows[row] << 1 | 1) & full;
+            long right = (rows[row] >>> 1 | 1L << (width - 1)) & full;
+            // Bit-sliced sum of the four blocked-side masks: ones, twos and fours bits of each count.
+            long pairLow = up ^ down;
+            long pairHigh = left ^ right;
+            long carryLow = up & down;
+            long carryHigh = left & right;
+            long ones = pairLow ^ pairHigh;
+            long carry = pairLow & pairHigh;
+            long twos = carryLow ^ carryHigh ^ carry;
+            long fours = carryLow & carryHigh;
+            for (int level = 4; level > bestLevel; level--) {
+                long candidates = empty & switch (level) {
+                    case 4 -> fours;
+                    case 3 -> twos & ones;
+                    case 2 -> twos & ~ones;
+                    case 1 -> ~fours & ~twos & ones;
+                    default -> ~fours & ~twos & ~ones;
+                };
+                if (candidates != 0) {
+                    best = row * width + Long.numberOfTrailingZeros(candidates);
+                    bestLevel = level;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,134 @@
+package patchwork;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A minimal streaming JSON writer. Tokens go straight to the underlying
+ * writer as they are produced, with commas inserted from a stack of open
+ * containers, so no document is ever built in memory.
+ */
+final class JsonWriter {
+    private final Writer out; // Receives the text.
+    private boolean[] needsComma = new boolean[8]; // Whether each open container already has an element.
+    private int depth; // Number of open containers.
+    private boolean afterName; // True between a name and its value.
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        // Writes the digits without a temporary string, from the negative value so Long.MIN_VALUE works.
+        if (value < 0) {
+            out.write('-');
+        } else {
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor <= -10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            out.write((char) ('0' - value / divisor % 10));
+            divisor /= 10;
+        }
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            out.write("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        out.write(bracket);
+        if (depth == needsComma.length) {
+            needsComma = Arrays.copyOf(needsComma, depth * 2);
+        }
+        needsComma[depth++] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("No open container");
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (needsComma[depth - 1]) {
+                out.write(',');
+            }
+            needsComma[depth - 1] = true;
+        }
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write("\\u00");
+                out.write(Character.forDigit(c >> 4, 16));
+                out.write(Character.forDigit(c & 15, 16));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
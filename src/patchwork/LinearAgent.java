@@ -0,0 +1,98 @@
+package patchwork;
+
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * An agent that plays the action whose resulting state a
+ * {@link LinearEvaluator} weight vector rates best. The action is advancing or
+ * buying one of the offered patches; where to place a bought patch is left to a
+ * {@link GreedyAgent}, since the linear features do not depend on it. The
+ * candidate purchases are the patches with a finite {@link PurchaseScorer}
+ * score, tried best value per time first so that ties go to the better
+ * trade.
+ */
+public final class LinearAgent implements Agent {
+    private final double[] weights; // The evaluation weights, possibly shared with a trainer.
+    private final GreedyAgent placer = new GreedyAgent(); // Chooses placements.
+    private final Random random; // Source of exploration moves.
+    private final double exploration; // Probability of playing a random action.
+    private final double[] features = new double[LinearEvaluator.FEATURE_COUNT]; // Scratch features.
+
+    /**
+     * Creates an agent that always plays its best action.
+     *
+     * @param weights The evaluation weights; they are read, not copied.
+     */
+    public LinearAgent(double[] weights) {
+        this(weights, new Random(0), 0);
+    }
+
+    /**
+     * Creates an agent that explores.
+     *
+     * @param weights     The evaluation weights; they are read, not copied.
+     * @param random      The source of exploration moves.
+     * @param exploration The probability, between 0 and 1, of playing a random action.
+     * @throws IllegalArgumentException if the probability is not between 0 and 1.
+     */
+    public LinearAgent(double[] weights, Random random, double exploration) {
+        if (weights.length != LinearEvaluator.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + LinearEvaluator.FEATURE_COUNT + " weights");
+        }
+        if (exploration < 0 || exploration > 1) {
+            throw new IllegalArgumentException("Exploration must be between 0 and 1");
+        }
+        this.weights = weights;
+        this.random = Objects.requireNonNull(random, "Random cannot be null");
+        this.exploration = exploration;
+    }
+
+    @Override
+    public Move chooseMove(GameState state) {
+        if (state.isFinished()) {
+            throw new IllegalStateException("The game is over");
+        }
+        int sign = state.getCurrentPlayer() == 0 ? 1 : -1;
+        boolean explore = exploration > 0 && random.nextDouble() < exploration;
+        var best = Move.ADVANCE;
+        double bestValue = explore ? random.nextDouble() : sign * valueAfter(state, Move.ADVANCE);
+        var purchases = placer.scorePurchases(state);
+        int candidates = 0;
+        for (int slot = 0; slot < state.getOfferedCount(); slot++) {
+            if (purchases[state.getOffered(slot)] != Float.NEGATIVE_INFINITY) {
+                candidates |= 1 << slot;
+            }
+        }
+        while (candidates != 0) {
+            int slot = Integer.numberOfTrailingZeros(candidates);
+            for (int other = candidates & candidates - 1; other != 0; other &= other - 1) {
+                int next = Integer.numberOfTrailingZeros(other);
+                if (purchases[state.getOffered(next)] > purchases[state.getOffered(slot)]) {
+                    slot = next;
+                }
+            }
+            candidates &= ~(1 << slot);
+            var purchase = placer.bestPurchase(state, slot);
+            if (purchase == null) {
+                continue;
+            }
+            double value = explore ? random.nextDouble() : sign * valueAfter(state, purchase);
+            if (value > bestValue) {
+                bestValue = value;
+                best = purchase;
+            }
+        }
+        return best;
+    }
+
+    private double valueAfter(GameState state, Move move) {
+        var next = state.copy();
+        next.apply(move);
+        if (next.isFinished()) {
+            return next.getScoreMargin();
+        }
+        LinearEvaluator.features(next, features);
+        return LinearEvaluator.evaluate(weights, features);
+    }
+}
@@ -0,0 +1,127 @@
+package patchwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A linear evaluation of headless states: the predicted final score margin of
+ * player 0 is the dot product of a weight vector with a fixed feature vector.
+ * Every feature is the difference between player 0 and player 1, scaled to
+ * roughly unit range.
+ */
+public final class LinearEvaluator {
+    /**
+     * Index of the constant feature.
+     */
+    public static final int BIAS = 0;
+    /**
+     * Index of the button difference.
+     */
+    public static final int BUTTONS = 1;
+    /**
+     * Index of the income difference.
+     */
+    public static final int INCOME = 2;
+    /**
+     * Index of the time track gap: positive when player 0 is behind and has more time left.
+     */
+    public static final int POSITION_GAP = 3;
+    /**
+     * Index of the empty square difference: positive when player 1 has more to fill.
+     */
+    public static final int EMPTY_SQUARES = 4;
+    /**
+     * Index of the difference in offered patches each player could afford.
+     */
+    public static final int AFFORDABILITY = 5;
+    /**
+     * The length of a feature vector.
+     */
+    public static final int FEATURE_COUNT = 6;
+
+    private static final int MAGIC = 0x5057574c; // "PWWL"
+
+    private LinearEvaluator() {
+    }
+
+    /**
+     * Writes the features of a state.
+     *
+     * @param state The state.
+     * @param out   The array receiving {@link #FEATURE_COUNT} features.
+     */
+    public static void features(GameState state, double[] out) {
+        out[BIAS] = 1;
+        out[BUTTONS] = (state.getButtons(0) - state.getButtons(1)) / 20.0;
+        out[INCOME] = (state.getIncome(0) - state.getIncome(1)) / 5.0;
+        out[POSITION_GAP] = (state.getPosition(1) - state.getPosition(0)) / 10.0;
+        out[EMPTY_SQUARES] = (state.getEmptySquares(1) - state.getEmptySquares(0)) / 20.0;
+        int affordable = Integer.bitCount(state.getAffordableSlots(0)) - Integer.bitCount(state.getAffordableSlots(1));
+        out[AFFORDABILITY] = affordable / 3.0;
+    }
+
+    /**
+     * Returns the dot product of weights and features.
+     *
+     * @param weights  The weights.
+     * @param features The features.
+     * @return The predicted final margin of player 0.
+     */
+    public static double evaluate(double[] weights, double[] features) {
+        double value = 0;
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            value += weights[i] * features[i];
+        }
+        return value;
+    }
+
+    /**
+     * Writes weights to a file, replacing it atomically.
+     *
+     * @param weights The weights.
+     * @param path    The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void save(double[] weights, Path path) throws IOException {
+        var temp = Files.createTempFile(path.toAbsolutePath().getParent(), "weights", ".tmp");
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(weights.length);
+            for (double weight : weights) {
+                output.writeDouble(weight);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads weights written by {@link #save(double[], Path)}.
+     *
+     * @param path The file to read.
+     * @return The weights.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file does not hold weights for these features.
+     */
+    public static double[] load(Path path) throws IOException {
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a weight file");
+            }
+            int count = input.readInt();
+            if (count != FEATURE_COUNT) {
+                throw new IllegalArgumentException("Expected " + FEATURE_COUNT + " weights, found " + count);
+            }
+            var weights = new double[count];
+            for (int i = 0; i < count; i++) {
+                weights[i] = input.readDouble();
+            }
+            return weights;
+        }
+    }
+}
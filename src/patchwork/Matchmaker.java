@@ -0,0 +1,453 @@
+package patchwork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Pairs waiting players of similar rating into games. Players join one of a
+ * row of rating buckets, each a lock-free queue, and matcher threads sweep the
+ * buckets looking for opponents; nothing is guarded by a monitor, so arrivals
+ * and matchers on different cores only meet on the compare-and-set of the
+ * queue they touch.
+ * <p>
+ * A matcher that polls a ticket off a queue owns it: it looks for an opponent
+ * first in the same bucket, then in the neighbouring buckets outwards, as far
+ * as the ticket's rating window allows. The window starts narrow and widens
+ * with the time the ticket has waited, so quiet hours still produce games. A
+ * ticket left without an opponent goes back to its bucket. The pairs of a
+ * sweep are handed to the session layer together, as one batch.
+ * <p>
+ * A matcher claims each ticket it polls by compare-and-set, so a player who
+ * leaves is never paired: a cancelled ticket is dropped when next polled, and
+ * a cancellation arriving while a matcher holds the ticket waits the few
+ * moments until the ticket is paired or put back.
+ */
+public final class Matchmaker implements AutoCloseable {
+    private static final int WAITING = 0; // Ticket state: in a queue.
+    private static final int HELD = 1; // Ticket state: taken by a matcher looking for a pair.
+    private static final int MATCHED = 2; // Ticket state: paired.
+    private static final int CANCELLED = 3; // Ticket state: the player left.
+
+    private final int minRating; // Lowest rating of the first bucket.
+    private final int bucketWidth; // Rating points per bucket.
+    private final int initialWindow; // Largest rating gap of a pair, for a ticket that just joined.
+    private final int widenPerSecond; // Window growth per second of waiting.
+    private final int maxWindow; // Largest rating gap of any pair.
+    private final Consumer<List<Match>> sessions; // Receives the pairs of each sweep.
+    private final ConcurrentLinkedQueue<Ticket>[] buckets; // Waiting tickets, by rating bucket.
+    private final AtomicLong nextTicket = new AtomicLong(); // Identifier of the next ticket.
+    private final AtomicInteger nextStart = new AtomicInteger(); // Spreads the first bucket of the sweeps.
+    private final AtomicBoolean running = new AtomicBoolean(); // True while the matcher threads run.
+    private final LongAdder waiting = new LongAdder(); // Tickets waiting.
+    private final LongAdder matched = new LongAdder(); // Pairs made.
+    private final LongAdder waitNanos = new LongAdder(); // Total wait of the matched tickets.
+    private final LongAdder ratingGap = new LongAdder(); // Total rating gap of the pairs.
+    private Thread[] matchers = new Thread[0]; // The matcher threads.
+
+    /**
+     * A player waiting for a game.
+     */
+    public static final class Ticket {
+        private final long id; // Identifier, in order of arrival.
+        private final String name; // The name of the player.
+        private final int rating; // The rating of the player.
+        private final int bucket; // The bucket the ticket waits in.
+        private final long joinedNanos; // When the player joined.
+        private final AtomicInteger state = new AtomicInteger(WAITING); // WAITING, HELD, MATCHED or CANCELLED.
+
+        private Ticket(long id, String name, int rating, int bucket, long joinedNanos) {
+            this.id = id;
+            this.name = name;
+            this.rating = rating;
+            this.bucket = bucket;
+            this.joinedNanos = joinedNanos;
+        }
+
+        /**
+         * Returns the name of the player.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the rating of the player.
+         *
+         * @return The rating.
+         */
+        public int getRating() {
+            return rating;
+        }
+
+        /**
+         * Returns true once the player was paired.
+         *
+         * @return True if matched.
+         */
+        public boolean isMatched() {
+            return state.get() == MATCHED;
+        }
+
+        /**
+         * Withdraws the player from matchmaking, unless already paired.
+         *
+         * @return True if the ticket was withdrawn, false if it was already matched or cancelled.
+         */
+        public boolean cancel() {
+            while (true) {
+                int current = state.get();
+                if (current == WAITING && state.compareAndSet(WAITING, CANCELLED)) {
+                    return true;
+                }
+                if (current == MATCHED || current == CANCELLED) {
+                    return false;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Two players paired for a game.
+     */
+    public static final class Match {
+        private final Ticket first; // The player who waited longer.
+        private final Ticket second; // The opponent found.
+        private final long waitNanos; // How long the first player waited.
+
+        private Match(Ticket first, Ticket second, long waitNanos) {
+            this.first = first;
+            this.second = second;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * Returns the player who waited longer.
+         *
+         * @return The first ticket.
+         */
+        public Ticket getFirst() {
+            return first;
+        }
+
+        /**
+         * Returns the opponent found for the first player.
+         *
+         * @return The second ticket.
+         */
+        public Ticket getSecond() {
+            return second;
+        }
+
+        /**
+         * Returns how long the first player waited, in nanoseconds.
+         *
+         * @return The wait.
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * Creates the console game of the pair, each player with a new 9x9 patchwork.
+         *
+         * @param size     The size of the time board.
+         * @param fullGame Whether the game uses the full set of patches.
+         * @return The game, dealt from the ticket identifiers.
+         */
+        public PatchworkGame newGame(int size, boolean fullGame) {
+            return new PatchworkGame(new Player(first.name, new Patchwork()), new Player(second.name, new Patchwork()),
+                    size, fullGame, first.id * 0x9e3779b97f4a7c15L ^ second.id);
+        }
+    }
+
+    /**
+     * Creates a matchmaker; no matcher thread runs until it is started.
+     *
+     * @param minRating      The lowest rating of the buckets; lower ratings join the first bucket.
+     * @param maxRating      The highest rating of the buckets; higher ratings join the last bucket.
+     * @param bucketWidth    The rating points per bucket.
+     * @param initialWindow  The largest rating gap of a pair, for players who just joined.
+     * @param widenPerSecond The growth of the window per second of waiting.
+     * @param maxWindow      The largest rating gap of any pair.
+     * @param sessions       Receives the pairs of each sweep; called from the matcher threads.
+     * @throws IllegalArgumentException if the ratings or windows are out of range.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Matchmaker(int minRating, int maxRating, int bucketWidth, int initialWindow, int widenPerSecond,
+            int maxWindow, Consumer<List<Match>> sessions) {
+        if (maxRating < minRating || bucketWidth < 1 || initialWindow < 0 || widenPerSecond < 0
+                || maxWindow < initialWindow) {
+            throw new IllegalArgumentException("Invalid rating range or window");
+        }
+        this.minRating = minRating;
+        this.bucketWidth = bucketWidth;
+        this.initialWindow = initialWindow;
+        this.widenPerSecond = widenPerSecond;
+        this.maxWindow = maxWindow;
+        this.sessions = Objects.requireNonNull(sessions, "Session layer cannot be null");
+        this.buckets = new ConcurrentLinkedQueue[(maxRating - minRating) / bucketWidth + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Adds a player to matchmaking.
+     *
+     * @param name   The name of the player.
+     * @param rating The rating of the player.
+     * @return The ticket of the player.
+     */
+    public Ticket join(String name, int rating) {
+        Objects.requireNonNull(name, "Name cannot be null");
+        int bucket = Math.max(0, Math.min(buckets.length - 1, (int) (((long) rating - minRating) / bucketWidth)));
+        var ticket = new Ticket(nextTicket.getAndIncrement(), name, rating, bucket, System.nanoTime());
+        waiting.increment();
+        buckets[bucket].offer(ticket);
+        return ticket;
+    }
+
+    /**
+     * Returns the rating window of a ticket after waiting for the given time.
+     *
+     * @param waitNanos The wait, in nanoseconds.
+     * @return The largest rating gap the ticket accepts.
+     */
+    public int window(long waitNanos) {
+        long widened = initialWindow + widenPerSecond * (waitNanos / 1_000_000L) / 1000;
+        return (int) Math.min(maxWindow, widened);
+    }
+
+    /**
+     * Sweeps every bucket once, pairing the tickets that have an opponent in
+     * their window, and hands the pairs to the session layer as one batch.
+     * Several threads may sweep at once.
+     *
+     * @param maxPairs The most pairs of the sweep.
+     * @return The number of pairs made.
+     */
+    public int sweep(int maxPairs) {
+        var batch = new ArrayList<Match>();
+        int start = Math.floorMod(nextStart.getAndIncrement() * 0x9e3779b9, buckets.length);
+        for (int i = 0; i < buckets.length && batch.size() < maxPairs; i++) {
+            int bucket = (start + i) % buckets.length;
+            // Bound the tickets taken per bucket, as put-backs return to the same queue.
+            int budget = 64;
+            Ticket ticket;
+            while (batch.size() < maxPairs && budget-- > 0 && (ticket = take(bucket)) != null) {
+                long now = System.nanoTime();
+                var opponent = findOpponent(ticket, window(now - ticket.joinedNanos));
+                if (opponent == null) {
+                    putBack(ticket);
+                    break;
+                }
+                ticket.state.set(MATCHED);
+                opponent.state.set(MATCHED);
+                var first = ticket.joinedNanos <= opponent.joinedNanos ? ticket : opponent;
+                var second = first == ticket ? opponent : ticket;
+                long wait = now - first.joinedNanos;
+                batch.add(new Match(first, second, wait));
+                waiting.add(-2);
+                matched.increment();
+                waitNanos.add(wait);
+                ratingGap.add(Math.abs(ticket.rating - opponent.rating));
+            }
+        }
+        if (!batch.isEmpty()) {
+            sessions.accept(batch);
+        }
+        return batch.size();
+    }
+
+    // Polls and holds the oldest live ticket of a bucket, dropping cancelled ones.
+    private Ticket take(int bucket) {
+        Ticket ticket;
+        while ((ticket = buckets[bucket].poll()) != null) {
+            if (ticket.state.compareAndSet(WAITING, HELD)) {
+                return ticket;
+            }
+            waiting.decrement();
+        }
+        return null;
+    }
+
+    // Releases a held ticket to the back of its bucket.
+    private void putBack(Ticket ticket) {
+        ticket.state.set(WAITING);
+        buckets[ticket.bucket].offer(ticket);
+    }
+
+    // Takes the nearest live ticket within the window, searching the ticket's bucket then outwards.
+    private Ticket findOpponent(Ticket ticket, int window) {
+        int reach = window / bucketWidth + 1;
+        for (int distance = 0; distance <= reach; distance++) {
+            for (int side = distance == 0 ? 1 : -1; side <= 1; side += 2) {
+                int bucket = ticket.bucket + side * distance;
+                if (bucket < 0 || bucket >= buckets.length) {
+                    continue;
+                }
+                var opponent = take(bucket);
+                if (opponent == null) {
+                    continue;
+                }
+                if (Math.abs(opponent.rating - ticket.rating) <= window) {
+                    return opponent;
+                }
+                putBack(opponent);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts matcher threads sweeping the buckets until the matchmaker is
+     * closed. A thread whose sweep finds nothing pauses for a moment.
+     *
+     * @param threads    The number of matcher threads.
+     * @param batchPairs The most pairs handed over at once.
+     * @throws IllegalStateException if the matchmaker is already running.
+     */
+    public void start(int threads, int batchPairs) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Matchmaker already running");
+        }
+        matchers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            matchers[i] = new Thread(() -> {
+                while (running.get()) {
+                    if (sweep(batchPairs) == 0) {
+                        LockSupport.parkNanos(200_000L);
+                    }
+                }
+            }, "matchmaker-" + i);
+            matchers[i].setDaemon(true);
+            matchers[i].start();
+        }
+    }
+
+    /**
+     * Stops the matcher threads and waits for them to finish their sweep.
+     */
+    @Override
+    public void close() {
+        running.set(false);
+        for (var thread : matchers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tickets waiting, including cancelled tickets not yet dropped.
+     *
+     * @return The waiting count.
+     */
+    public long getWaiting() {
+        return waiting.sum();
+    }
+
+    /**
+     * Returns the number of pairs made.
+     *
+     * @return The match count.
+     */
+    public long getMatched() {
+        return matched.sum();
+    }
+
+    /**
+     * Returns the mean wait of the players who waited longer in their pair.
+     *
+     * @return The mean wait, in milliseconds.
+     */
+    public double getMeanWaitMillis() {
+        long pairs = matched.sum();
+        return pairs == 0 ? 0 : waitNanos.sum() / 1e6 / pairs;
+    }
+
+    /**
+     * Returns the mean rating gap of the pairs.
+     *
+     * @return The mean gap, in rating points.
+     */
+    public double getMeanRatingGap() {
+        long pairs = matched.sum();
+        return pairs == 0 ? 0 : (double) ratingGap.sum() / pairs;
+    }
+
+    /**
+     * Runs a synthetic arrival benchmark: producer threads join players with
+     * normally distributed ratings at a fixed total rate while matcher threads
+     * pair them, for each number of matcher threads up to the given one.
+     *
+     * @param args Optionally the arrivals per second, the seconds per run and the most matcher threads.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            var games = new LongAdder();
+            try (var matchmaker = new Matchmaker(0, 3000, 25, 50, 100, 400, batch -> games.add(batch.size()))) {
+                matchmaker.start(threads, 256);
+                int producers = Math.max(1, threads);
+                var running = new AtomicBoolean(true);
+                var arrivals = new Thread[producers];
+                for (int p = 0; p < producers; p++) {
+                    long seed = p;
+                    arrivals[p] = new Thread(() -> {
+                        var random = new SplittableRandom(seed);
+                        long interval = 1_000_000_000L * producers / rate;
+                        long next = System.nanoTime();
+                        long count = 0;
+                        while (running.get()) {
+                            long now = System.nanoTime();
+                            while (next <= now) {
+                                int rating = (int) Math.round(1500 + 300 * gaussian(random));
+                                var ticket = matchmaker.join("player-" + seed + "-" + count++, rating);
+                                if (random.nextInt(50) == 0) {
+                                    ticket.cancel();
+                                }
+                                next += interval;
+                            }
+                            LockSupport.parkNanos(Math.max(1000, next - now));
+                        }
+                    }, "arrivals-" + p);
+                    arrivals[p].start();
+                }
+                long start = System.nanoTime();
+                Thread.sleep(seconds * 1000L);
+                running.set(false);
+                for (var thread : arrivals) {
+                    thread.join();
+                }
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%d matcher threads: %.0f pairs per second, mean wait %.1f ms, mean gap %.1f,"
+                        + " %d waiting%n", threads, matchmaker.getMatched() / elapsed, matchmaker.getMeanWaitMillis(),
+                        matchmaker.getMeanRatingGap(), matchmaker.getWaiting());
+            }
+        }
+    }
+
+    // Standard normal deviate, by the Box-Muller transform.
+    private static double gaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
@@ -0,0 +1,146 @@
+package patchwork;
+
+/**
+ * A move of the headless game: either advancing past the opponent, or buying
+ * one of the offered patches and placing it on the player's patchwork in a
+ * given orientation and position. A move can be packed into an {@code int} for
+ * tables and records.
+ */
+public final class Move {
+    /**
+     * The move that advances the player just past the opponent.
+     */
+    public static final Move ADVANCE = new Move(-1, -1, -1, -1, -1);
+
+    private static final int BUY_FLAG = 1 << 30;
+
+    private final int slot; // Offset of the patch in the market window, -1 for an advance.
+    private final int patchId; // Catalog identifier of the bought patch.
+    private final int orientation; // Index of the orientation in the catalog.
+    private final int row; // Row of the top-left corner of the placement.
+    private final int col; // Column of the top-left corner of the placement.
+
+    private Move(int slot, int patchId, int orientation, int row, int col) {
+        this.slot = slot;
+        this.patchId = patchId;
+        this.orientation = orientation;
+        this.row = row;
+        this.col = col;
+    }
+
+    /**
+     * Creates a move that buys an offered patch and places it.
+     *
+     * @param slot        The offset of the patch in the market window.
+     * @param patchId     The catalog identifier of the patch.
+     * @param orientation The index of the orientation in {@link PatchCatalog#orientations(int)}.
+     * @param row         The row of the top-left corner of the placement.
+     * @param col         The column of the top-left corner of the placement.
+     * @return The new move.
+     * @throws IllegalArgumentException if a component is negative or too large to be packed.
+     */
+    public static Move buy(int slot, int patchId, int orientation, int row, int col) {
+        if (slot < 0 || slot > 3 || patchId < 0 || patchId > 1023 || orientation < 0 || orientation > 3
+                || row < 0 || row > 127 || col < 0 || col > 127) {
+            throw new IllegalArgumentException("Invalid move components");
+        }
+        return new Move(slot, patchId, orientation, row, col);
+    }
+
+    /**
+     * Unpacks a move packed by {@link #encode()}.
+     *
+     * @param code The packed move.
+     * @return The move.
+     */
+    public static Move decode(int code) {
+        if ((code & BUY_FLAG) == 0) {
+            return ADVANCE;
+        }
+        return new Move((code >>> 28) & 3, (code >>> 16) & 1023, (code >>> 14) & 3, (code >>> 7) & 127, code & 127);
+    }
+
+    /**
+     * Packs the move into an int; {@link #ADVANCE} packs to zero.
+     *
+     * @return The packed move.
+     */
+    public int encode() {
+        if (isAdvance()) {
+            return 0;
+        }
+        return BUY_FLAG | slot << 28 | patchId << 16 | orientation << 14 | row << 7 | col;
+    }
+
+    /**
+     * Returns true if this move advances instead of buying a patch.
+     *
+     * @return True for an advance.
+     */
+    public boolean isAdvance() {
+        return slot < 0;
+    }
+
+    /**
+     * Returns the offset of the bought patch in the market window.
+     *
+     * @return The market slot, or -1 for an advance.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Returns the catalog identifier of the bought patch.
+     *
+     * @return The patch identifier, or -1 for an advance.
+     */
+    public int getPatchId() {
+        return patchId;
+    }
+
+    /**
+     * Returns the index of the orientation of the bought patch.
+     *
+     * @return The orientation index, or -1 for an advance.
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Returns the row of the top-left corner of the placement.
+     *
+     * @return The row, or -1 for an advance.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Returns the column of the top-left corner of the placement.
+     *
+     * @return The column, or -1 for an advance.
+     */
+    public int getCol() {
+        return col;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Move other && other.encode() == encode();
+    }
+
+    @Override
+    public int hashCode() {
+        return encode();
+    }
+
+    @Override
+    public String toString() {
+        if (isAdvance()) {
+            return "advance";
+        }
+        return "buy slot " + slot + " (patch " + patchId + ", orientation " + orientation + ") at " + row + "," + col;
+    }
+}
@@ -0,0 +1,284 @@
+package patchwork;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A read-only table of opening moves, stored in a binary file sorted by
+ * position key and memory-mapped, so that lookups are a binary search over the
+ * page cache and several processes can share one book.
+ * <p>
+ * A position key is {@link GameState#hash(int)} over the players and the next
+ * patches of the market: games whose shuffled markets only differ further down
+ * share their opening entries. Keys cover the player to move, so console
+ * snapshots, which force their mover, find the entries of self-play games.
+ * The file is a header (magic, version, market lookahead, entry count)
+ * followed by entries of a key, a packed {@link Move}, a visit count and a
+ * mean score margin for the player to move.
+ */
+public final class OpeningBook {
+    private static final int MAGIC = 0x50574f42; // "PWOB"
+    private static final int VERSION = 2; // 2 keys positions by the player to move, not the last mover.
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 20;
+    /**
+     * The number of market patches after the cursor included in a position key.
+     */
+    public static final int DEFAULT_LOOKAHEAD = GameState.MARKET_WINDOW;
+
+    private final MappedByteBuffer buffer; // The mapped file.
+    private final int lookahead; // Market lookahead of the keys.
+    private final int size; // Number of entries.
+
+    /**
+     * A book entry: the recommended move of a position and its statistics.
+     */
+    public static final class Entry {
+        private final Move move;
+        private final int visits;
+        private final float meanMargin;
+
+        private Entry(Move move, int visits, float meanMargin) {
+            this.move = move;
+            this.visits = visits;
+            this.meanMargin = meanMargin;
+        }
+
+        /**
+         * Returns the recommended move.
+         *
+         * @return The move.
+         */
+        public Move getMove() {
+            return move;
+        }
+
+        /**
+         * Returns how many self-play games played this move from this position.
+         *
+         * @return The number of visits.
+         */
+        public int getVisits() {
+            return visits;
+        }
+
+        /**
+         * Returns the mean final score margin of the player to move after this move.
+         *
+         * @return The mean margin.
+         */
+        public float getMeanMargin() {
+            return meanMargin;
+        }
+
+        @Override
+        public String toString() {
+            return move + " (" + visits + " games, mean margin " + meanMargin + ")";
+        }
+    }
+
+    private OpeningBook(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not an opening book file");
+        }
+        this.lookahead = buffer.getInt(8);
+        this.size = buffer.getInt(12);
+        if ((long) HEADER_BYTES + (long) size * ENTRY_BYTES > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated opening book file");
+        }
+    }
+
+    /**
+     * Maps an opening book file.
+     *
+     * @param path The path of the book.
+     * @return The book.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a valid book.
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the entry of a position.
+     *
+     * @param state The position.
+     * @return The entry, or null if the position is not in the book.
+     */
+    public Entry find(GameState state) {
+        long key = state.hash(lookahead);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = HEADER_BYTES + mid * ENTRY_BYTES;
+            long midKey = buffer.getLong(offset);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return new Entry(Move.decode(buffer.getInt(offset + 8)), buffer.getInt(offset + 12),
+                        buffer.getFloat(offset + 16));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the book move of a position if it is legal there.
+     *
+     * @param state The position.
+     * @return The book move, or null if the position is not in the book.
+     */
+    public Move lookup(GameState state) {
+        var entry = find(state);
+        if (entry == null || !state.legalMoves().contains(entry.getMove())) {
+            return null;
+        }
+        return entry.getMove();
+    }
+
+    /**
+     * Builds a book from self-play games between exploring greedy agents. Every
+     * move of the first plies of each game is credited with the final margin of
+     * the player who played it; each position keeps its move with the best mean
+     * margin among those played at least {@code minVisits} times.
+     *
+     * @param catalog     The patches of the game.
+     * @param trackLength The number of positions of the time track.
+     * @param games       The number of self-play games.
+     * @param plies       The number of opening moves recorded per game.
+     * @param minVisits   The number of games a move needs to enter the book.
+     * @param seed        The seed of the market shuffles and of the agents.
+     * @param out         The path of the book to write; it is replaced atomically.
+     * @throws IOException if the book cannot be written.
+     */
+    public static void build(PatchCatalog catalog, int trackLength, int games, int plies, int minVisits, long seed,
+            Path out) throws IOException {
+        Objects.requireNonNull(catalog, "Catalog cannot be null");
+        Objects.requireNonNull(out, "Output cannot be null");
+        var deals = new DealGenerator(catalog.size(), seed, DealGenerator.Sampling.RANDOM);
+        var agent = new GreedyAgent(new Random(seed), 0.15);
+        var stats = new HashMap<Long, Map<Integer, long[]>>(); // key -> move -> {visits, margin sum}
+        var keys = new long[plies];
+        var moves = new int[plies];
+        var movers = new int[plies];
+
+        for (int game = 0; game < games; game++) {
+            var state = GameState.initial(catalog, deals.deal(game), trackLength);
+            int recorded = 0;
+            while (!state.isFinished()) {
+                var move = agent.chooseMove(state);
+                if (recorded < plies) {
+                    keys[recorded] = state.hash(DEFAULT_LOOKAHEAD);
+                    moves[recorded] = move.encode();
+                    movers[recorded] = state.getCurrentPlayer();
+                    recorded++;
+                }
+                state.apply(move);
+            }
+            int margin = state.getScoreMargin();
+            for (int i = 0; i < recorded; i++) {
+                var counts = stats.computeIfAbsent(keys[i], k -> new HashMap<>())
+                        .computeIfAbsent(moves[i], k -> new long[2]);
+                counts[0]++;
+                counts[1] += movers[i] == 0 ? margin : -margin;
+            }
+        }
+        write(stats, minVisits, out);
+    }
+
+    private static void write(Map<Long, Map<Integer, long[]>> stats, int minVisits, Path out) throws IOException {
+        var sortedKeys = stats.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        var entryKeys = new long[sortedKeys.length];
+        var entryMoves = new int[sortedKeys.length];
+        var entryVisits = new int[sortedKeys.length];
+        var entryMargins = new float[sortedKeys.length];
+        int count = 0;
+        for (long key : sortedKeys) {
+            int bestMove = 0;
+            long bestVisits = 0;
+            double bestMean = Double.NEGATIVE_INFINITY;
+            for (var move : stats.get(key).entrySet()) {
+                long visits = move.getValue()[0];
+                double mean = (double) move.getValue()[1] / visits;
+                if (visits >= minVisits && mean > bestMean) {
+                    bestMove = move.getKey();
+                    bestVisits = visits;
+                    bestMean = mean;
+                }
+            }
+            if (bestVisits > 0) {
+                entryKeys[count] = key;
+                entryMoves[count] = bestMove;
+                entryVisits[count] = (int) Math.min(bestVisits, Integer.MAX_VALUE);
+                entryMargins[count] = (float) bestMean;
+                count++;
+            }
+        }
+
+        var parent = out.toAbsolutePath().getParent();
+        var temp = Files.createTempFile(parent, "book", ".tmp");
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(DEFAULT_LOOKAHEAD);
+            output.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                output.writeLong(entryKeys[i]);
+                output.writeInt(entryMoves[i]);
+                output.writeInt(entryVisits[i]);
+                output.writeFloat(entryMargins[i]);
+            }
+        }
+        Files.move(temp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Builds an opening book offline.
+     * Usage: {@code OpeningBook <output> [games] [plies] [trackLength] [seed]}.
+     *
+     * @param args The command line arguments.
+     * @throws IOException if the patch data cannot be read or the book cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: OpeningBook <output> [games] [plies] [trackLength] [seed]");
+            return;
+        }
+        var out = Paths.get(args[0]);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int trackLength = args.length > 3 ? Integer.parseInt(args[3]) : 25;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        var catalog = PatchCatalog.load(Paths.get("data/dataPatch.data"));
+        build(catalog, trackLength, games, plies, 2, seed, out);
+        System.out.println("Wrote " + open(out).size() + " positions to " + out);
+    }
+}
@@ -36,6 +36,16 @@ public class Patch {
 		}
 	}
 
+	/**
+	 * Creates a leather patch: a single square, free, without income, placed by
+	 * the first player to cross a leather checkpoint of the time board.
+	 *
+	 * @return A new leather patch.
+	 */
+	public static Patch leather() {
+		return new Patch(0, 0, 0, new boolean[][] {{true}}, 1, 1);
+	}
+
 	/**
 	 * Returns the cost of the patch.
 	 *
@@ -167,6 +177,43 @@ public class Patch {
 		return width * height;
 	}
 
+	/**
+	 * Returns the number of occupied squares of the patch, i.e. the area it
+	 * covers once placed on a patchwork.
+	 *
+	 * @return The number of occupied squares of the patch.
+	 */
+	public int getArea() {
+		int area = 0;
+		for (boolean[] row : grid) {
+			for (boolean square : row) {
+				if (square) {
+					area++;
+				}
+			}
+		}
+		return area;
+	}
+
+	/**
+	 * Returns the grid of the patch as one bit mask per row: bit {@code j} of
+	 * entry {@code i} is set when the square at row {@code i}, column {@code j}
+	 * is occupied.
+	 *
+	 * @return A new array holding one mask per row of the patch.
+	 */
+	public long[] toRowMasks() {
+		long[] masks = new long[height];
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				if (grid[i][j]) {
+					masks[i] |= 1L << j;
+				}
+			}
+		}
+		return masks;
+	}
+
 	/**
 	 * Returns the value at the specified cell in the patch grid.
 	 *
@@ -0,0 +1,172 @@
+package patchwork;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable, indexed set of patches. The index of a patch in the catalog is
+ * its identifier in headless game states, moves and records.
+ * <p>
+ * Besides the {@link Patch} objects, the catalog keeps their numbers in
+ * parallel primitive arrays so that bulk scoring reads contiguous memory.
+ */
+public final class PatchCatalog {
+    private final List<Patch> patches; // The patches, indexed by identifier.
+    private final List<List<PatchOrientation>> orientations; // Distinct orientations of each patch.
+    final int[] cost; // Cost in buttons of each patch.
+    final int[] time; // Cost in time of each patch.
+    final int[] income; // Button income of each patch.
+    final int[] area; // Occupied squares of each patch.
+    final long[] mask; // Shape of each patch, row i at bits 9 * i, as placed on a patchwork.
+    final long[][] placements; // Every placement of each patch on a 9x9 patchwork, see FitCache.
+
+    private PatchCatalog(List<Patch> patches) {
+        this.patches = List.copyOf(patches);
+        var all = new ArrayList<List<PatchOrientation>>(patches.size());
+        for (var patch : this.patches) {
+            all.add(PatchOrientation.of(patch));
+        }
+        this.orientations = List.copyOf(all);
+        int size = this.patches.size();
+        this.cost = new int[size];
+        this.time = new int[size];
+        this.income = new int[size];
+        this.area = new int[size];
+        this.mask = new long[size];
+        this.placements = new long[size][];
+        for (int id = 0; id < size; id++) {
+            var patch = this.patches.get(id);
+            cost[id] = patch.getCost();
+            time[id] = patch.getTime();
+            income[id] = patch.getIncome();
+            area[id] = patch.getArea();
+            var rows = patch.toRowMasks();
+            for (int i = 0; i < rows.length; i++) {
+                mask[id] |= rows[i] << (GameState.QUILT_SIZE * i);
+            }
+            placements[id] = FitCache.placementMasks(orientations.get(id));
+        }
+    }
+
+    /**
+     * Creates a catalog from a list of patches; identifiers follow the list order.
+     *
+     * @param patches The patches of the catalog.
+     * @return The new catalog.
+     * @throws NullPointerException if the list or one of its patches is null.
+     */
+    public static PatchCatalog of(List<Patch> patches) {
+        Objects.requireNonNull(patches, "Patches cannot be null");
+        return new PatchCatalog(patches);
+    }
+
+    /**
+     * Loads a catalog from a patch data file, see {@link PatchworkGame#readPatches(Path)}.
+     *
+     * @param path The path to the file containing the patch data.
+     * @return The new catalog.
+     * @throws IOException if the file cannot be read.
+     */
+    public static PatchCatalog load(Path path) throws IOException {
+        return new PatchCatalog(PatchworkGame.readPatches(path));
+    }
+
+    /**
+     * Returns the number of patches in the catalog.
+     *
+     * @return The number of patches.
+     */
+    public int size() {
+        return patches.size();
+    }
+
+    /**
+     * Returns the patch with the given identifier.
+     *
+     * @param id The identifier of the patch.
+     * @return The patch.
+     */
+    public Patch get(int id) {
+        return patches.get(id);
+    }
+
+    /**
+     * Returns the cost in buttons of a patch.
+     *
+     * @param id The identifier of the patch.
+     * @return The cost of the patch.
+     */
+    public int getCost(int id) {
+        return cost[id];
+    }
+
+    /**
+     * Returns the cost in time of a patch.
+     *
+     * @param id The identifier of the patch.
+     * @return The time of the patch.
+     */
+    public int getTime(int id) {
+        return time[id];
+    }
+
+    /**
+     * Returns the button income of a patch.
+     *
+     * @param id The identifier of the patch.
+     * @return The income of the patch.
+     */
+    public int getIncome(int id) {
+        return income[id];
+    }
+
+    /**
+     * Returns the number of occupied squares of a patch.
+     *
+     * @param id The identifier of the patch.
+     * @return The area of the patch.
+     */
+    public int getArea(int id) {
+        return area[id];
+    }
+
+    /**
+     * Returns the shape of a patch in its original orientation as a single mask,
+     * row {@code i} of the patch at bits {@code 9 * i} and up, which is the layout
+     * of the patch placed at the top-left corner of a 9x9 patchwork.
+     *
+     * @param id The identifier of the patch.
+     * @return The mask of the patch.
+     */
+    public long getMask(int id) {
+        return mask[id];
+    }
+
+    /**
+     * Returns the distinct orientations of the patch with the given identifier.
+     *
+     * @param id The identifier of the patch.
+     * @return The orientations of the patch.
+     */
+    public List<PatchOrientation> orientations(int id) {
+        return orientations.get(id);
+    }
+
+    /**
+     * Returns the identifier of a patch of the catalog, compared by identity.
+     *
+     * @param patch The patch to look up.
+     * @return The identifier of the patch, or -1 if it is not in the catalog.
+     */
+    public int indexOf(Patch patch) {
+        for (int i = 0; i < patches.size(); i++) {
+            if (patches.get(i) == patch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
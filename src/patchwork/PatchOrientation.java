@@ -0,0 +1,126 @@
+package patchwork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One rotation of a patch, stored as one bit mask per row so that it can be
+ * tested against a patchwork occupancy with a shift and an AND per row.
+ */
+public final class PatchOrientation {
+    private static final int[] DEGREES = {0, 90, 180, 270};
+
+    private final Patch patch; // The patch in this orientation.
+    private final int degree; // The rotation applied to the original patch.
+    private final long[] rows; // One bit mask per row of the rotated patch.
+
+    private PatchOrientation(Patch patch, int degree) {
+        this.patch = patch;
+        this.degree = degree;
+        this.rows = patch.toRowMasks();
+    }
+
+    /**
+     * Returns the distinct orientations of a patch: the patch itself and its
+     * rotations by 90, 180 and 270 degrees, duplicates removed. A patch without
+     * any occupied square cannot be placed and has no orientation.
+     *
+     * @param patch The patch to rotate.
+     * @return The distinct orientations of the patch.
+     * @throws NullPointerException if the patch is null.
+     */
+    public static List<PatchOrientation> of(Patch patch) {
+        Objects.requireNonNull(patch, "Patch cannot be null");
+        if (patch.getArea() == 0) {
+            return List.of();
+        }
+        var result = new ArrayList<PatchOrientation>();
+        for (int degree : DEGREES) {
+            var orientation = new PatchOrientation(degree == 0 ? patch : patch.rotate(degree), degree);
+            if (result.stream().noneMatch(o -> Arrays.equals(o.rows, orientation.rows))) {
+                result.add(orientation);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Returns the rotated patch.
+     *
+     * @return The rotated patch.
+     */
+    public Patch getPatch() {
+        return patch;
+    }
+
+    /**
+     * Returns the rotation applied to the original patch (0, 90, 180 or 270).
+     *
+     * @return The rotation in degrees.
+     */
+    public int getDegree() {
+        return degree;
+    }
+
+    /**
+     * Returns the width of the rotated patch.
+     *
+     * @return The width of the rotated patch.
+     */
+    public int getWidth() {
+        return patch.getWidth();
+    }
+
+    /**
+     * Returns the height of the rotated patch.
+     *
+     * @return The height of the rotated patch.
+     */
+    public int getHeight() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the mask of a row of the rotated patch.
+     *
+     * @param row The row of the patch.
+     * @return The mask of the row, bit {@code j} set when column {@code j} is occupied.
+     */
+    public long getRowMask(int row) {
+        return rows[row];
+    }
+
+    /**
+     * Checks whether the patch fits on a board given as one mask per row when its
+     * top-left corner is placed at ({@code row}, {@code col}).
+     *
+     * @param board The occupancy of the board, one mask per row.
+     * @param row   The row of the top-left corner.
+     * @param col   The column of the top-left corner.
+     * @return True if no occupied square of the patch overlaps the board.
+     */
+    public boolean fits(long[] board, int row, int col) {
+        for (int i = 0; i < rows.length; i++) {
+            if ((board[row + i] & (rows[i] << col)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Places the patch on a board given as one mask per row. The caller is
+     * responsible for checking {@link #fits(long[], int, int)} first.
+     *
+     * @param board The occupancy of the board, updated in place.
+     * @param row   The row of the top-left corner.
+     * @param col   The column of the top-left corner.
+     */
+    public void place(long[] board, int row, int col) {
+        for (int i = 0; i < rows.length; i++) {
+            board[row + i] |= rows[i] << col;
+        }
+    }
+}
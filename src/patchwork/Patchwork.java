@@ -3,22 +3,109 @@ package patchwork;
 import java.util.*;
 
 /**
- * The Patchwork class represents the patchwork board of a player in the Patchwork game. It consists of a 9x9 grid of Patches and tracks completed rows and columns.
+ * The Patchwork class represents the patchwork board of a player in the Patchwork game. It consists of a grid of
+ * Patches, 9x9 by default, and tracks completed rows and columns.
+ * <p>
+ * Which squares are covered is kept in a row-major bitset of {@code long} words, square ({@code row}, {@code col})
+ * being bit {@code row * width + col}. A patch is checked and placed one patch row at a time: the row mask is
+ * shifted to the bit offset of its first square and ANDed or ORed into the word holding it, plus the next word
+ * when the row straddles a word boundary. Boards of any size thus cost a couple of word operations per patch row.
  */
 public class Patchwork {
-    private final Patch[][] grid; // 9x9 grid to hold the patchwork.
+    private static final long[] SQUARE_KEYS = squareKeys(81); // Keys of the squares of a 9x9 board.
+
+    private final int width; // The number of columns.
+    private final int height; // The number of rows.
+    private final Patch[][] grid; // The patch covering each square, by row and column.
+    private final long[] bits; // Covered squares, bit row * width + col.
+    private final int[] rowCounts; // The number of covered squares of each row.
+    private final int[] colCounts; // The number of covered squares of each column.
+    private final long[] squareKeys; // Random key of each square for the occupancy hash.
+    private long[] pieceRows = new long[5]; // Row masks of the piece being placed, reused between placements.
     private int fullRows; // The number of complete rows in the grid.
     private int fullCols; // The number of complete columns in the grid.
+    private int occupied; // The number of covered squares.
+    private int income; // The buttons earned on each payday by the placed patches.
+    private long occupancyHash; // Exclusive or of the keys of the covered squares.
 
     /**
      * Constructs a new Patchwork object with an empty 9x9 grid and no completed rows or columns.
      */
     public Patchwork() {
-        grid = new Patch[9][9];
+        this(9, 9);
+    }
+
+    /**
+     * Constructs a new Patchwork object with an empty grid of the given size and no completed rows or columns.
+     *
+     * @param width  The number of columns.
+     * @param height The number of rows.
+     * @throws IllegalArgumentException if a dimension is not positive.
+     */
+    public Patchwork(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Width and height must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        grid = new Patch[height][width];
+        bits = new long[(width * height + 63) >>> 6];
+        rowCounts = new int[height];
+        colCounts = new int[width];
+        squareKeys = width * height == SQUARE_KEYS.length ? SQUARE_KEYS : squareKeys(width * height);
         fullRows = 0;
         fullCols = 0;
     }
 
+    /**
+     * Empties the patchwork board so that it can be reused for a new game.
+     */
+    public void reset() {
+        for (Patch[] row : grid) {
+            Arrays.fill(row, null);
+        }
+        Arrays.fill(bits, 0);
+        Arrays.fill(rowCounts, 0);
+        Arrays.fill(colCounts, 0);
+        fullRows = 0;
+        fullCols = 0;
+        occupied = 0;
+        income = 0;
+        occupancyHash = 0;
+    }
+
+    // Draws the square keys from a fixed SplitMix64 sequence, so hashes are stable between runs and sizes.
+    private static long[] squareKeys(int count) {
+        var keys = new long[count];
+        long z = 0;
+        for (int i = 0; i < keys.length; i++) {
+            z += 0x9e3779b97f4a7c15L;
+            long r = z;
+            r = (r ^ (r >>> 30)) * 0xbf58476d1ce4e5b9L;
+            r = (r ^ (r >>> 27)) * 0x94d049bb133111ebL;
+            keys[i] = r ^ (r >>> 31);
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the number of columns of the patchwork board.
+     *
+     * @return The width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of rows of the patchwork board.
+     *
+     * @return The height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
     /**
      * Checks if a given patch is available to be placed on the patchwork board.
      *
@@ -31,8 +118,8 @@ public class Patchwork {
             throw new IllegalArgumentException("Patch cannot be null");
         }
         int count = 0;
-        for (int row = 0; row < 9; row++) {
-            for (int col = 0; col < 9; col++) {
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
                 if (grid[row][col] != null && grid[row][col].equals(patch)) {
                     count++;
                 }
@@ -60,44 +147,136 @@ public class Patchwork {
     }
 
     /**
-     * Checks if the patchwork board is complete (all 81 patches have been placed).
+     * Gets the occupancy mask of a row of the patchwork board. Bit {@code col} of
+     * the result is set when the square at ({@code row}, {@code col}) is covered.
      *
-     * @return True if the board is complete, false otherwise.
+     * @param row The row to read.
+     * @return The occupancy mask of the row.
+     * @throws IllegalArgumentException if the row is out of bounds.
+     * @throws IllegalStateException    if the board is wider than 64 columns.
      */
-    public boolean isFull() {
-        return fullRows == 9 && fullCols == 9;
+    public long getRowMask(int row) {
+        if (row < 0 || row >= height) {
+            throw new IllegalArgumentException("Row must be between 0 and " + (height - 1));
+        }
+        if (width > 64) {
+            throw new IllegalStateException("Rows wider than 64 columns do not fit a mask");
+        }
+        int offset = row * width;
+        int word = offset >>> 6;
+        int shift = offset & 63;
+        long mask = bits[word] >>> shift;
+        if (shift + width > 64) {
+            mask |= bits[word + 1] << (64 - shift);
+        }
+        return width == 64 ? mask : mask & ((1L << width) - 1);
     }
 
     /**
-     * Checks if a given row is complete (all 9 patches in the row have been placed).
+     * Checks if the square at the given row and column is covered.
      *
-     * @param row The row to check.
-     * @return True if the row is complete, false otherwise.
+     * @param row The row of the square.
+     * @param col The column of the square.
+     * @return True if the square is covered.
+     * @throws IllegalArgumentException if the square is out of bounds.
      */
-    private boolean isRowFull(int row) {
-        for (int col = 0; col < 9; col++) {
-            if (grid[row][col] == null) {
-                return false;
-            }
+    public boolean isCovered(int row, int col) {
+        if (row < 0 || row >= height || col < 0 || col >= width) {
+            throw new IllegalArgumentException("Square out of bounds");
         }
-        return true;
+        int index = row * width + col;
+        return (bits[index >>> 6] & 1L << index) != 0;
     }
 
     /**
-     * Checks if a given column is complete (all 9 patches in the column have been placed).
+     * Checks if a shape fits the empty squares of the patchwork board. The
+     * shape is given as row masks, bit {@code j} of mask {@code i} covering the
+     * square ({@code row + i}, {@code col + j}).
      *
-     * @param col The column to check.
-     * @return True if the column is complete, false otherwise.
+     * @param rows The row masks of the shape.
+     * @param row  The row of the top of the shape.
+     * @param col  The column of the left of the shape.
+     * @return True if the shape lies inside the board and covers no covered square.
      */
-    private boolean isColFull(int col) {
-        for (int row = 0; row < 9; row++) {
-            if (grid[row][col] == null) {
+    public boolean fits(long[] rows, int row, int col) {
+        return fits(rows, rows.length, row, col);
+    }
+
+    private boolean fits(long[] rows, int count, int row, int col) {
+        if (row < 0 || col < 0 || row + count > height) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            long mask = rows[i];
+            if (mask == 0) {
+                continue;
+            }
+            if (64 - Long.numberOfLeadingZeros(mask) > width - col) {
+                return false;
+            }
+            int offset = (row + i) * width + col;
+            int word = offset >>> 6;
+            int shift = offset & 63;
+            if ((bits[word] & mask << shift) != 0) {
+                return false;
+            }
+            // The part of the row past the end of the word; shifting by 64 would be a no-op.
+            long spill = shift == 0 ? 0 : mask >>> (64 - shift);
+            if (spill != 0 && (bits[word + 1] & spill) != 0) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Gets a hash of which squares of the patchwork board are covered. It is
+     * updated with every change of the board, and equal boards have equal
+     * hashes, so it can key caches of board queries.
+     *
+     * @return The occupancy hash.
+     */
+    public long getOccupancyHash() {
+        return occupancyHash;
+    }
+
+    /**
+     * Gets the number of covered squares of the patchwork board.
+     *
+     * @return The number of covered squares.
+     */
+    public int getOccupiedSquares() {
+        return occupied;
+    }
+
+    /**
+     * Gets the number of empty squares of the patchwork board, each of which
+     * costs two points at the end of the game.
+     *
+     * @return The number of empty squares.
+     */
+    public int getEmptySquares() {
+        return width * height - occupied;
+    }
+
+    /**
+     * Gets the buttons the placed patches earn on each payday.
+     *
+     * @return The income of the patchwork.
+     */
+    public int getIncome() {
+        return income;
+    }
+
+    /**
+     * Checks if the patchwork board is complete (every square is covered).
+     *
+     * @return True if the board is complete, false otherwise.
+     */
+    public boolean isFull() {
+        return fullRows == height && fullCols == width;
+    }
+
     /**
      * Adds the given piece to the player's patchwork.
      *
@@ -112,31 +291,42 @@ public class Patchwork {
         Objects.requireNonNull(player, "Player cannot be null");
         Objects.requireNonNull(piece, "Piece cannot be null");
 
-        if (row < 0 || row >= 9) {
-            throw new IllegalArgumentException("Row must be between 0 and 8");
+        if (row < 0 || row >= height) {
+            throw new IllegalArgumentException("Row must be between 0 and " + (height - 1));
         }
-        if (col < 0 || col >= 9) {
-            throw new IllegalArgumentException("Column must be between 0 and 8");
+        if (col < 0 || col >= width) {
+            throw new IllegalArgumentException("Column must be between 0 and " + (width - 1));
         }
 
         boolean[][] pieceGrid = piece.getGrid();
-        int height = pieceGrid.length;
-        int width = pieceGrid[0].length;
+        int pieceHeight = pieceGrid.length;
+        int pieceWidth = pieceHeight == 0 ? 0 : pieceGrid[0].length;
 
-        if (height == 0 || width == 0) {
+        if (pieceHeight == 0 || pieceWidth == 0) {
             throw new IllegalArgumentException("Invalid patch size. The piece cannot be empty.");
         }
 
-        if (row + height > 9 || col + width > 9) {
+        if (row + pieceHeight > height || col + pieceWidth > width) {
             throw new IllegalArgumentException("Invalid coordinates. The piece cannot be placed at these coordinates.");
         }
+        if (pieceWidth > 64) {
+            throw new IllegalArgumentException("Pieces wider than 64 squares are not supported");
+        }
 
-        for (int i = row; i < row + height; i++) {
-            for (int j = col; j < col + width; j++) {
-                if (pieceGrid[i - row][j - col] && grid[i][j] != null) {
-                    return false;
+        if (pieceRows.length < pieceHeight) {
+            pieceRows = new long[pieceHeight];
+        }
+        for (int i = 0; i < pieceHeight; i++) {
+            long mask = 0;
+            for (int j = 0; j < pieceWidth; j++) {
+                if (pieceGrid[i][j]) {
+                    mask |= 1L << j;
                 }
             }
+            pieceRows[i] = mask;
+        }
+        if (!fits(pieceRows, pieceHeight, row, col)) {
+            return false;
         }
 
         int pieceCost = piece.getCost();
@@ -144,30 +334,53 @@ public class Patchwork {
             return false;
         }
 
-        for (int i = row; i < row + height; i++) {
-            for (int j = col; j < col + width; j++) {
-                if (pieceGrid[i - row][j - col]) {
-                    grid[i][j] = piece;
-                }
+        for (int i = 0; i < pieceHeight; i++) {
+            long mask = pieceRows[i];
+            if (mask == 0) {
+                continue;
             }
-        }
-
-        fullRows = 0;
-        fullCols = 0;
-
-        for (int i = 0; i < 9; i++) {
-            if (isRowFull(i)) {
-                fullRows++;
+            int offset = (row + i) * width + col;
+            int word = offset >>> 6;
+            int shift = offset & 63;
+            bits[word] |= mask << shift;
+            if (shift != 0 && mask >>> (64 - shift) != 0) {
+                bits[word + 1] |= mask >>> (64 - shift);
             }
-            if (isColFull(i)) {
-                fullCols++;
+            for (long rest = mask; rest != 0; rest &= rest - 1) {
+                int j = Long.numberOfTrailingZeros(rest);
+                grid[row + i][col + j] = piece;
+                occupancyHash ^= squareKeys[offset + j];
+                cover(row + i, col + j);
             }
         }
+        income += piece.getIncome();
 
         player.payButtons(piece.getCost());
         return true;
     }
 
+    // Counts a newly covered square towards its row and column.
+    private void cover(int row, int col) {
+        occupied++;
+        if (++rowCounts[row] == width) {
+            fullRows++;
+        }
+        if (++colCounts[col] == height) {
+            fullCols++;
+        }
+    }
+
+    // Removes an uncovered square from the counts of its row and column.
+    private void uncover(int row, int col) {
+        occupied--;
+        if (rowCounts[row]-- == width) {
+            fullRows--;
+        }
+        if (colCounts[col]-- == height) {
+            fullCols--;
+        }
+    }
+
     /**
      * Moves the given piece to a new position on the patchwork board.
      *
@@ -182,11 +395,11 @@ public class Patchwork {
     public boolean movePiece(Patch piece, int currentX, int currentY, int newX, int newY) {
         Objects.requireNonNull(piece, "Piece cannot be null");
 
-        if (currentX < 0 || currentX >= 9 || currentY < 0 || currentY >= 9) {
-            throw new IllegalArgumentException("Current coordinates must be between 0 and 8");
+        if (currentX < 0 || currentX >= height || currentY < 0 || currentY >= width) {
+            throw new IllegalArgumentException("Current coordinates must lie on the board");
         }
-        if (newX < 0 || newX >= 9 || newY < 0 || newY >= 9) {
-            throw new IllegalArgumentException("New coordinates must be between 0 and 8");
+        if (newX < 0 || newX >= height || newY < 0 || newY >= width) {
+            throw new IllegalArgumentException("New coordinates must lie on the board");
         }
 
         if (grid[currentX][currentY] != piece) {
@@ -197,8 +410,15 @@ public class Patchwork {
             throw new IllegalArgumentException("The new coordinates are already occupied");
         }
 
+        int from = currentX * width + currentY;
+        int to = newX * width + newY;
         grid[currentX][currentY] = null;
         grid[newX][newY] = piece;
+        bits[from >>> 6] &= ~(1L << from);
+        bits[to >>> 6] |= 1L << to;
+        occupancyHash ^= squareKeys[from] ^ squareKeys[to];
+        uncover(currentX, currentY);
+        cover(newX, newY);
 
         return true;
     }
@@ -210,8 +430,8 @@ public class Patchwork {
      */
     public List<Patch> getPlacedPieces() {
         List<Patch> placedPieces = new ArrayList<>();
-        for (int row = 0; row < 9; row++) {
-            for (int col = 0; col < 9; col++) {
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
                 if (grid[row][col] != null) {
                     placedPieces.add(grid[row][col]);
                 }
@@ -227,8 +447,8 @@ public class Patchwork {
      * @return The x-coordinate of the piece, or -1 if the piece is not found.
      */
     public int getPieceX(Patch piece) {
-        for (int x = 0; x < 9; x++) {
-            for (int y = 0; y < 9; y++) {
+        for (int x = 0; x < height; x++) {
+            for (int y = 0; y < width; y++) {
                 if (grid[x][y] == piece) {
                     return x;
                 }
@@ -244,8 +464,8 @@ public class Patchwork {
      * @return The y-coordinate of the piece, or -1 if the piece is not found.
      */
     public int getPieceY(Patch piece) {
-        for (int x = 0; x < 9; x++) {
-            for (int y = 0; y < 9; y++) {
+        for (int x = 0; x < height; x++) {
+            for (int y = 0; y < width; y++) {
                 if (grid[x][y] == piece) {
                     return y;
                 }
@@ -264,22 +484,22 @@ public class Patchwork {
         StringBuilder builder = new StringBuilder();
         // Header row with column numbers
         builder.append("   ");
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < width; i++) {
             builder.append(String.format(" %-3d", i));
         }
         builder.append('\n');
         // Top border
         builder.append("  ╔");
-        for (int i = 0; i < 8; i++) {
+        for (int i = 1; i < width; i++) {
             builder.append("═══╦");
         }
         builder.append("═══╗\n");
         // Rows with patches
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < height; i++) {
             // Left border and row number
             builder.append(String.format("%-2d", i)).append("║");
             // Patches in the row
-            for (int j = 0; j < 9; j++) {
+            for (int j = 0; j < width; j++) {
                 if (grid[i][j] != null) {
                     builder.append(" # ");
                 } else {
@@ -290,9 +510,9 @@ public class Patchwork {
             // Right border and row number
             builder.append(String.format("%2d", i)).append("\n");
             // Bottom border
-            if (i < 8) {
+            if (i < height - 1) {
                 builder.append("  ╠");
-                for (int j = 0; j < 8; j++) {
+                for (int j = 1; j < width; j++) {
                     builder.append("═══╬");
                 }
                 builder.append("═══╣\n");
@@ -300,7 +520,7 @@ public class Patchwork {
         }
         // Bottom border
         builder.append("  ╚");
-        for (int i = 0; i < 8; i++) {
+        for (int i = 1; i < width; i++) {
             builder.append("═══╩");
         }
         builder.append("═══╝\n");
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
 /**
  * The PatchworkGame class represents a game of Patchwork. It manages the game board, players, available patches, and gameplay logic.
@@ -22,9 +23,16 @@ public class PatchworkGame {
     private final int size; // Size of the game board.
     private final TimeBoard timeBoard; // Array to store time board.
     private final boolean fullGame; // Determines whether the game is in phase 1 or 2.
+    private final List<Patch> deck; // The patches of a new game, before shuffling.
+    private final int[] order; // Scratch market order, reused by every deal.
+    private PatchCatalog catalog; // The deck numbered for headless snapshots, built on first use.
+    private Agent agent1; // Agent choosing the moves of player 1, or null for a human.
+    private Agent agent2; // Agent choosing the moves of player 2, or null for a human.
+    private long seed; // Seed of the current deal.
 
     /**
-     * Constructor for the PatchworkGame class.
+     * Constructor for the PatchworkGame class. The patches are dealt from a
+     * random seed, available from the result of the game.
      *
      * @param player1   Player 1 instance.
      * @param player2   Player 2 instance.
@@ -33,6 +41,20 @@ public class PatchworkGame {
      * @throws IllegalArgumentException if the size is less than 1.
      */
     public PatchworkGame(Player player1, Player player2, int size, boolean fullGame) {
+        this(player1, player2, size, fullGame, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor for the PatchworkGame class, dealing the patches from a seed.
+     *
+     * @param player1   Player 1 instance.
+     * @param player2   Player 2 instance.
+     * @param size      Size of the game board.
+     * @param fullGame  Determines whether the game is in phase 1 or 2.
+     * @param seed      The seed of the deal, see {@link DealGenerator}.
+     * @throws IllegalArgumentException if the size is less than 1.
+     */
+    public PatchworkGame(Player player1, Player player2, int size, boolean fullGame, long seed) {
         if (size < 1) {
             throw new IllegalArgumentException("Size must be at least 1");
         }
@@ -51,8 +73,11 @@ public class PatchworkGame {
             initializeOpenPatch(); // Initialize pieces for simplified game.
         }
 
-        // Shuffle the available pieces.
-        Collections.shuffle(patches);
+        this.deck = List.copyOf(patches);
+        this.order = new int[deck.size()];
+
+        // Deal the available pieces.
+        deal(seed);
 
         // Initialize the time board.
         for (int i = 0; i < size; i++) {
@@ -62,6 +87,54 @@ public class PatchworkGame {
         }
     }
 
+    /**
+     * Lets an agent choose the moves of a player instead of the console. An
+     * agent that is {@link AutoCloseable}, such as a {@link PonderingAgent}, is
+     * closed when the game ends and must be set again to play another game.
+     *
+     * @param player The player, one of the two players of this game.
+     * @param agent  The agent, or null to let a human play through the console.
+     * @throws IllegalArgumentException if the player is not in this game.
+     */
+    public void setAgent(Player player, Agent agent) {
+        if (player == player1) {
+            agent1 = agent;
+        } else if (player == player2) {
+            agent2 = agent;
+        } else {
+            throw new IllegalArgumentException("The player is not in this game");
+        }
+    }
+
+    /**
+     * Puts the game, its players and its time board back in their starting state
+     * and deals the patches again, shuffled by the given seed, so that the same
+     * objects can be reused for another game.
+     *
+     * @param seed The seed of the shuffle of the patches.
+     */
+    public void reset(long seed) {
+        player1.reset();
+        player2.reset();
+        timeBoard.reset();
+        deal(seed);
+    }
+
+    /**
+     * Puts the patches in the order of a seed, with a single shuffle into the
+     * reused order array.
+     *
+     * @param seed The seed of the deal.
+     */
+    private void deal(long seed) {
+        this.seed = seed;
+        patches.clear();
+        DealGenerator.shuffle(order, seed);
+        for (int id : order) {
+            patches.add(deck.get(id));
+        }
+    }
+
     /**
      * Initializes the list of available pieces based on whether the game is in phase 1 or 2.
      */
@@ -96,30 +169,61 @@ public class PatchworkGame {
                 patches.add(new Patch(cost, time, income, grid, width, height));
             }
         }
-
-        Collections.shuffle(patches); // Shuffle the available pieces.
     }
 
     /**
      * Starts the game. Plays turns for both players until the game is finished.
-     * Determines the winner and prints the result.
+     * Determines the winner by score (buttons minus two per empty square) and
+     * prints the result. The agents that hold resources are closed when the
+     * game ends, even if it ends with an exception.
+     *
+     * @return The result of the game.
+     * @throws IllegalStateException if an agent cannot be closed.
      */
-    public void start() {
-        while (!isGameFinished()) {
-            playTurn(player1);
-            playTurn(player2);
+    public GameResult start() {
+        long startTime = System.nanoTime();
+        int turns = 0;
+        try {
+            while (!isGameFinished()) {
+                playTurn(player1);
+                playTurn(player2);
+                turns += 2;
+            }
+        } finally {
+            closeAgents();
         }
 
         // Determine the winner
-        var winner = player1.getButtons() > player2.getButtons() ? player1 :
-                player2.getButtons() > player1.getButtons() ? player2 : null;
+        var result = GameResult.of(player1.getName(), player2.getName(), player1.getButtons(),
+                player2.getButtons(), player1.getPatchworkPlayer().getEmptySquares(),
+                player2.getPatchworkPlayer().getEmptySquares(), player1.getScore(), player2.getScore())
+                .withPlay(seed, turns, System.nanoTime() - startTime);
 
         // Print the result
         System.out.println("The game has ended!");
-        if (winner == null) {
+        if (result.getWinner() < 0) {
             System.out.println("It's a tie!");
         } else {
-            System.out.println("Player " + winner.getName() + " has won!");
+            System.out.println("Player " + result.getAgent(result.getWinner()) + " has won!");
+        }
+        return result;
+    }
+
+    // Closes the agents that are AutoCloseable, such as the background thread of a pondering agent, and hands their
+    // players back to the console.
+    private void closeAgents() {
+        var agents = new Agent[] {agent1, agent2};
+        for (var agent : agents) {
+            if (agent instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not close the agent " + agent, e);
+                } finally {
+                    agent1 = agent1 == agent ? null : agent1;
+                    agent2 = agent2 == agent ? null : agent2;
+                }
+            }
         }
     }
 
@@ -133,6 +237,18 @@ public class PatchworkGame {
      * @param player The player to play the turn for.
      */
     private void playTurn(Player player) {
+        // One snapshot per turn: the opponent's agent ponders on it, and its market index classifies the offers
+        var state = toState(player);
+        var opponentAgent = player == player1 ? agent2 : agent1;
+        if (opponentAgent != null) {
+            opponentAgent.ponder(state);
+        }
+        var agent = player == player1 ? agent1 : agent2;
+        if (agent != null) {
+            playAgentTurn(player, agent, state);
+            return;
+        }
+
         // Print the current state of the game
         System.out.println(player.getName() + " starts their turn!");
         System.out.println("Buttons: " + player.getButtons());
@@ -146,15 +262,15 @@ public class PatchworkGame {
         var choice = -1;
         Patch patch = null;
 
+        var current = player == player1 ? 0 : 1;
+        var buyable = state.getBuyableSlots(current);
+        var affordable = state.getAffordableSlots(current);
         while (patch == null) {
             System.out.println("Here are the available pieces:");
-            var displayedPieces = 0;
-            for (int i = 0; i < patches.size() && displayedPieces < 3; i++) {
-                Patch p = patches.get(i);
-                if (player.openPatch(p)) {
-                    System.out.println(i + " : " + p.toString());
-                    displayedPieces++;
-                }
+            for (int i = 0; i < state.getOfferedCount(); i++) {
+                var note = (buyable >>> i & 1) != 0 ? ""
+                        : (affordable >>> i & 1) != 0 ? " (no room on your patchwork)" : " (too expensive)";
+                System.out.println(i + " : " + patches.get(i).toString() + note);
             }
 
             while (true) {
@@ -163,19 +279,20 @@ public class PatchworkGame {
                     choice = Integer.parseInt(inputScanner.nextLine());
 
                     if (choice == -1) {
-                        int buttonsToAdd = player.advanceAndReceiveButtons(player == player1 ? player2 : player1,
-                                timeBoard);
-                        player.payButtons(buttonsToAdd);
+                        placeLeather(player, player.advanceAndReceiveButtons(player == player1 ? player2 : player1,
+                                timeBoard), inputScanner);
                         return;
-                    } else if (choice >= 0 && choice < patches.size() && player.openPatch(patches.get(choice))) {
-                        var chosenPiece = patches.get(choice);
-                        if (chosenPiece.getCost() > player.getButtons()) {
-                            System.out.println("You don't have enough buttons to purchase this piece. "
+                    } else if (choice >= 0 && choice < state.getOfferedCount()) {
+                        if ((buyable >>> choice & 1) != 0) {
+                            patch = patches.get(choice);
+                            buyFromMarket(choice);
+                            break;
+                        } else if ((affordable >>> choice & 1) != 0) {
+                            System.out.println("This piece does not fit anywhere on your patchwork. "
                                     + "Please choose another piece or enter -1 to advance.");
                         } else {
-                            patch = chosenPiece;
-                            patches.remove(choice);
-                            break;
+                            System.out.println("You don't have enough buttons to purchase this piece. "
+                                    + "Please choose another piece or enter -1 to advance.");
                         }
                     } else {
                         System.out.println("Invalid choice. Please choose another piece or enter -1 to advance.");
@@ -210,9 +327,8 @@ public class PatchworkGame {
                         System.out.println("Enter -1 to move without taking a patch");
                         choice = Integer.parseInt(inputScanner.nextLine());
                         if (choice == -1) {
-                            var buttonsToAdd = player.advanceAndReceiveButtons(player == player1 ? player2 : player1,
-                                    timeBoard);
-                            player.payButtons(buttonsToAdd);
+                            placeLeather(player, player.advanceAndReceiveButtons(player == player1 ? player2 : player1,
+                                    timeBoard), inputScanner);
                             return;
                         } else {
                             System.out.println("Invalid choice.");
@@ -231,37 +347,144 @@ public class PatchworkGame {
                 }
             }
         }
-        patches.remove(patch);
+        endPurchase(player, patch, inputScanner);
+    }
 
-        // Update the player's buttons and time
-        if (added) {
-            player.addTimePlayer(patch.getTime());
+    /**
+     * Plays a turn for a player whose moves are chosen by an agent. The agent
+     * sees the game as a {@link GameState} where the market starts at the first
+     * remaining patch.
+     *
+     * @param player The player to play the turn for.
+     * @param agent  The agent of the player.
+     * @param state  The snapshot of the game at the start of the turn.
+     * @throws IllegalStateException if the agent chooses a move that cannot be played.
+     */
+    private void playAgentTurn(Player player, Agent agent, GameState state) {
+        var move = state.isFinished() ? Move.ADVANCE : agent.chooseMove(state);
+        System.out.println(player.getName() + " plays " + move);
+
+        if (move.isAdvance()) {
+            placeLeather(player, player.advanceAndReceiveButtons(player == player1 ? player2 : player1, timeBoard),
+                    null);
+            return;
+        }
 
-            var buttonsToAdd = patch.getIncome() - patch.getCost();
-            if (buttonsToAdd > 0) {
-                player.payButtons(buttonsToAdd);
-            }
+        var patch = state.getCatalog().orientations(move.getPatchId()).get(move.getOrientation()).getPatch();
+        if (!player.getPatchworkPlayer().addToPatchwork(player, patch, move.getRow(), move.getCol())) {
+            throw new IllegalStateException("The agent chose a move that cannot be played: " + move);
         }
+        buyFromMarket(move.getSlot());
+        endPurchase(player, patch, null);
+    }
+
+    /**
+     * Takes a patch out of the market. As in the board game, and in
+     * {@link GameState}, the market then starts where the bought patch was, so
+     * the next patches offered are the ones that followed it.
+     *
+     * @param index The index of the bought patch among the remaining patches.
+     */
+    private void buyFromMarket(int index) {
+        patches.remove(index);
+        Collections.rotate(patches, -index);
+    }
+
+    /**
+     * Ends the turn of a player who placed a patch: updates their time and
+     * position on the time board, and lets them place the leather patches they
+     * passed.
+     *
+     * @param player The player who placed the patch.
+     * @param patch  The placed patch.
+     * @param input  The input of the turn if the player is human, null for an agent.
+     */
+    private void endPurchase(Player player, Patch patch, Scanner input) {
+        // Update the player's time; the cost was paid when placing the patch
+        player.addTimePlayer(patch.getTime());
 
-        // Update the player's position on the time board
-        var newPosition = Math.min(player.getPosition() + patch.getCost(), size * size - 1);
-        player.setPosition(newPosition);
+        // Update the player's position on the time board, collecting income on the way
+        var newPosition = Math.max(player.getPosition(),
+                Math.min(player.getPosition() + patch.getTime(), size * size - 1));
+        placeLeather(player, player.moveTo(newPosition, timeBoard), input);
 
         // End the turn
         player.setDone(true);
     }
 
+    /**
+     * Lets a player place the leather patches they took on the time board. An
+     * agent's patches go to the most isolated holes of its patchwork; a human
+     * chooses the coordinates. Patches that no longer fit are lost.
+     *
+     * @param player The player who took the patches.
+     * @param count  The number of leather patches.
+     * @param input  The input of the turn if the player is human, null for an agent.
+     */
+    private void placeLeather(Player player, int count, Scanner input) {
+        var patchwork = player.getPatchworkPlayer();
+        var agent = player == player1 ? agent1 : agent2;
+        for (int i = 0; i < count && patchwork.getEmptySquares() > 0; i++) {
+            if (agent != null) {
+                var rows = new long[patchwork.getHeight()];
+                for (int row = 0; row < rows.length; row++) {
+                    rows[row] = patchwork.getRowMask(row);
+                }
+                int square = HoleSelector.bestHole(rows, patchwork.getWidth());
+                int row = square / patchwork.getWidth();
+                int col = square % patchwork.getWidth();
+                patchwork.addToPatchwork(player, Patch.leather(), row, col);
+                System.out.println(player.getName() + " places a leather patch at (" + row + "," + col + ")");
+                continue;
+            }
+            var added = false;
+            while (!added) {
+                System.out.println("Here is your patchwork:");
+                System.out.println(patchwork.toString());
+                System.out.println("Choose the coordinates of your leather patch (x,y):");
+                try {
+                    var x = Integer.parseInt(input.nextLine());
+                    var y = Integer.parseInt(input.nextLine());
+                    added = patchwork.addToPatchwork(player, Patch.leather(), x, y);
+                    if (!added) {
+                        System.out.println("This square is already covered. Please choose again.");
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid input. Please enter a number.");
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * Loads patch data from a file.
      *
      * @param path The path to the file containing the patch data.
      */
     public void loadDataPatch(Path path) {
-        try (var reader = Files.newBufferedReader(path)) {
-            var scanner = new Scanner(reader);
-
-            patches.clear();
+        patches.clear();
+        try {
+            patches.addAll(readPatches(path));
+        } catch (IOException e1) {
+            e1.printStackTrace();
+        }
+    }
 
+    /**
+     * Reads the patches described in a data file, in file order. Each patch is a
+     * header line {@code cost,time,income,width,height} followed by one line per
+     * row of its grid; blocks whose cost, time and income are all zero are
+     * skipped.
+     *
+     * @param path The path to the file containing the patch data.
+     * @return The list of patches read from the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static List<Patch> readPatches(Path path) throws IOException {
+        var result = new ArrayList<Patch>();
+        try (var reader = Files.newBufferedReader(path); var scanner = new Scanner(reader)) {
             while (scanner.hasNextLine()) {
                 var line = scanner.nextLine();
                 var parts = line.split(",");
@@ -283,24 +506,62 @@ public class PatchworkGame {
                 }
 
                 if (cost != 0 || time != 0 || income != 0) {
-                    patches.add(new Patch(cost, time, income, grid, width, height));
+                    result.add(new Patch(cost, time, income, grid, width, height));
                 }
             }
+        }
+        return result;
+    }
 
-            scanner.close();
-        } catch (IOException e1) {
-            e1.printStackTrace();
+    /**
+     * Returns a snapshot of this game as a headless {@link GameState}. The
+     * remaining patches, in their current order, become the market; the player
+     * whose position is behind is the one to move. Every snapshot of a game
+     * shares one catalog of the patches dealt, so a patch keeps its identifier
+     * for the whole game and states played ahead from one snapshot compare
+     * equal to later snapshots.
+     *
+     * @return The state of this game.
+     */
+    public GameState toState() {
+        if (catalog == null) {
+            catalog = PatchCatalog.of(deck);
         }
+        var market = new int[patches.size()];
+        for (int i = 0; i < market.length; i++) {
+            market[i] = catalog.indexOf(patches.get(i));
+        }
+        var state = GameState.initial(catalog, market, size * size);
+        state.setPlayer(0, player1);
+        state.setPlayer(1, player2);
+        state.setLeatherTaken(timeBoard.getLeatherTaken());
+        return state;
+    }
 
-        Collections.shuffle(patches);
+    /**
+     * Returns a snapshot of this game in which the given player moves next,
+     * since console games alternate turns.
+     *
+     * @param toMove The player about to play.
+     * @return The state of this game.
+     */
+    private GameState toState(Player toMove) {
+        var state = toState();
+        state.forceCurrentPlayer(toMove == player1 ? 0 : 1);
+        return state;
     }
 
     /**
-     * Returns true if the game is finished.
+     * Returns true if the game is finished: both players reached the end of the
+     * time board, or both have played and no patch is left.
      *
      * @return True if the game is finished, false otherwise.
      */
     private boolean isGameFinished() {
+        var lastPosition = size * size - 1;
+        if (player1.getPosition() >= lastPosition && player2.getPosition() >= lastPosition) {
+            return true;
+        }
         return player1.isDone() && player2.isDone() && patches.isEmpty();
     }
 }
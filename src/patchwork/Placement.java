@@ -0,0 +1,80 @@
+package patchwork;
+
+/**
+ * A patch of a catalog placed on a patchwork: its identifier, the index of its
+ * orientation in {@link PatchCatalog#orientations(int)} and the coordinates of
+ * its top-left corner.
+ */
+public final class Placement {
+    private final int patchId;
+    private final int orientation;
+    private final int row;
+    private final int col;
+
+    /**
+     * Creates a placement.
+     *
+     * @param patchId     The catalog identifier of the patch.
+     * @param orientation The index of the orientation of the patch.
+     * @param row         The row of the top-left corner.
+     * @param col         The column of the top-left corner.
+     */
+    public Placement(int patchId, int orientation, int row, int col) {
+        this.patchId = patchId;
+        this.orientation = orientation;
+        this.row = row;
+        this.col = col;
+    }
+
+    /**
+     * Returns the catalog identifier of the patch.
+     *
+     * @return The patch identifier.
+     */
+    public int getPatchId() {
+        return patchId;
+    }
+
+    /**
+     * Returns the index of the orientation of the patch.
+     *
+     * @return The orientation index.
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Returns the row of the top-left corner.
+     *
+     * @return The row.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Returns the column of the top-left corner.
+     *
+     * @return The column.
+     */
+    public int getCol() {
+        return col;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Placement other && other.patchId == patchId && other.orientation == orientation
+                && other.row == row && other.col == col;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((patchId * 4 + orientation) * 128 + row) * 128 + col;
+    }
+
+    @Override
+    public String toString() {
+        return "patch " + patchId + " (orientation " + orientation + ") at " + row + "," + col;
+    }
+}
@@ -31,6 +31,18 @@ public class Player {
         this.timePlayer = 0;
     }
 
+    /**
+     * Puts the player back in their starting state, with an empty patchwork, so
+     * that the player can be reused for a new game.
+     */
+    public void reset() {
+        patchworkPlayer.reset();
+        this.buttons = 5;
+        this.position = 0;
+        this.done = false;
+        this.timePlayer = 0;
+    }
+
     /**
      * Gets the name of the player.
      *
@@ -116,6 +128,54 @@ public class Player {
         this.done = done;
     }
 
+    /**
+     * Gets the current score of the player: their buttons minus two for each
+     * empty square of their patchwork. The patchwork keeps its counts up to
+     * date, so this is a constant-time read.
+     *
+     * @return The current score.
+     */
+    public int getScore() {
+        return buttons - 2 * patchworkPlayer.getEmptySquares();
+    }
+
+    /**
+     * Gets the income of the player: the buttons earned on each payday.
+     *
+     * @return The income of the player's patchwork.
+     */
+    public int getIncome() {
+        return patchworkPlayer.getIncome();
+    }
+
+    /**
+     * Projects the final score of the player if they bought nothing more: the
+     * current score plus their income on each payday still ahead.
+     *
+     * @param remainingPaydays The number of paydays the player has yet to pass.
+     * @return The projected final score.
+     * @throws IllegalArgumentException if the number of paydays is negative.
+     */
+    public int getProjectedScore(int remainingPaydays) {
+        if (remainingPaydays < 0) {
+            throw new IllegalArgumentException("Remaining paydays cannot be negative");
+        }
+        return getScore() + getIncome() * remainingPaydays;
+    }
+
+    /**
+     * Projects the final score of the player if they bought nothing more, with
+     * the paydays still ahead of them on a time board.
+     *
+     * @param timeBoard The time board of the game.
+     * @return The projected final score.
+     * @throws NullPointerException if timeBoard is null.
+     */
+    public int getProjectedScore(TimeBoard timeBoard) {
+        Objects.requireNonNull(timeBoard, "Time board cannot be null");
+        return getProjectedScore(timeBoard.getRemainingPaydays(position));
+    }
+
     /**
      * Pays the specified cost in buttons.
      *
@@ -136,28 +196,46 @@ public class Player {
 
     /**
      * Advances the player's position on the time board by moving to the other player's
-     * position plus one, and receives one button for each space moved.
+     * position plus one, and receives one button for each space moved. The move stops at
+     * the last position of the track, and a player already ahead of the other stays put.
      *
      * @param other     The other player.
      * @param timeBoard The time board of the game.
-     * @return The number of special patches to place.
+     * @return The number of leather patches to place.
      * @throws NullPointerException if either other or timeBoard is null.
      */
     public int advanceAndReceiveButtons(Player other, TimeBoard timeBoard) {
         Objects.requireNonNull(other, "Other player cannot be null");
         Objects.requireNonNull(timeBoard, "Time board cannot be null");
 
-        int destination = other.getPosition() + 1;
+        int lastPosition = timeBoard.getSize() * timeBoard.getSize() - 1;
+        int destination = Math.max(position, Math.min(other.getPosition() + 1, lastPosition));
 
         buttons += (destination - position);
 
-        if (destination == timeBoard.getSize()) {
-            buttons--;
-        }
+        return moveTo(destination, timeBoard);
+    }
 
+    /**
+     * Moves the player forward on the time board and resolves the checkpoints
+     * passed on the way: the player receives their income once per button
+     * checkpoint and takes the leather patches still lying on the track.
+     *
+     * @param destination The new position of the player.
+     * @param timeBoard   The time board of the game.
+     * @return The number of leather patches to place.
+     * @throws IllegalArgumentException if the destination is behind the player.
+     * @throws NullPointerException     if timeBoard is null.
+     */
+    public int moveTo(int destination, TimeBoard timeBoard) {
+        Objects.requireNonNull(timeBoard, "Time board cannot be null");
+        if (destination < position) {
+            throw new IllegalArgumentException("Players cannot move backwards");
+        }
+        buttons += getIncome() * timeBoard.paydaysCrossed(position, destination);
+        int leather = timeBoard.takeLeather(position, destination);
         setPosition(destination);
-
-        return (destination - position);
+        return leather;
     }
 
     /**
@@ -0,0 +1,138 @@
+package patchwork;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An agent that thinks during its opponent's turn. When told that the
+ * opponent is about to move, it guesses the opponent's most likely replies and,
+ * on a background thread, lets its delegate choose its answer to each of them.
+ * When its own turn comes, the answer to the reply actually played is used if
+ * it is ready or being computed; every other speculative search is cancelled.
+ * States are matched by {@link GameState#positionHash()}. A console game's
+ * snapshot forces the mover, and console turns alternate, so the agent is
+ * pondered as the mover after every reply, even one that would leave the
+ * opponent behind on the time track.
+ * <p>
+ * The background thread runs until the agent is closed; a
+ * {@link PatchworkGame} closes its agents when it ends.
+ * <p>
+ * The delegate is only ever used by one thread at a time. Searches are
+ * cancelled by interruption, so delegates that search for long should check
+ * {@link Thread#isInterrupted()}.
+ */
+public final class PonderingAgent implements Agent, AutoCloseable {
+    private final Agent delegate; // The agent whose searches are run ahead of time.
+    private final GreedyAgent predictor = new GreedyAgent(); // Guesses the opponent's replies.
+    private final int replies; // Number of opponent replies pondered.
+    private final ExecutorService executor; // The background thread.
+    private final ReentrantLock searchLock = new ReentrantLock(); // Held while the delegate searches.
+    private final Map<Long, Future<Move>> pondered = new HashMap<>(); // Answers by position hash.
+    private long hits; // Turns answered from pondering.
+
+    /**
+     * Creates a pondering agent.
+     *
+     * @param delegate The agent that chooses the moves.
+     * @param replies  The number of likely opponent replies to ponder.
+     * @throws IllegalArgumentException if the number of replies is less than 1.
+     */
+    public PonderingAgent(Agent delegate, int replies) {
+        if (replies < 1) {
+            throw new IllegalArgumentException("At least one reply must be pondered");
+        }
+        this.delegate = Objects.requireNonNull(delegate, "Delegate cannot be null");
+        this.replies = replies;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, "ponder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void ponder(GameState state) {
+        cancelAll();
+        int opponent = state.getCurrentPlayer();
+        boolean alternating = state.isMoverForced();
+        for (var reply : predictor.rankMoves(state, replies)) {
+            var next = state.copy();
+            next.apply(reply);
+            if (alternating) {
+                next.forceCurrentPlayer(1 - opponent);
+            }
+            if (next.isFinished() || next.getCurrentPlayer() == opponent) {
+                continue;
+            }
+            long key = next.positionHash();
+            if (!pondered.containsKey(key)) {
+                pondered.put(key, executor.submit(() -> search(next)));
+            }
+        }
+    }
+
+    @Override
+    public Move chooseMove(GameState state) {
+        var future = pondered.remove(state.positionHash());
+        cancelAll();
+        if (future != null) {
+            try {
+                var move = future.get();
+                hits++;
+                return move;
+            } catch (CancellationException | ExecutionException e) {
+                // Fall back to searching now.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return search(state);
+    }
+
+    private Move search(GameState state) {
+        searchLock.lock();
+        try {
+            return delegate.chooseMove(state);
+        } finally {
+            searchLock.unlock();
+        }
+    }
+
+    // Cancels the speculative searches and waits for the delegate to be free.
+    private void cancelAll() {
+        for (var future : pondered.values()) {
+            future.cancel(true);
+        }
+        pondered.clear();
+        searchLock.lock();
+        searchLock.unlock();
+    }
+
+    /**
+     * Returns how many turns were answered by a search started while pondering.
+     *
+     * @return The number of pondering hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Cancels pondering and stops the background thread.
+     */
+    @Override
+    public void close() {
+        for (var future : pondered.values()) {
+            future.cancel(true);
+        }
+        pondered.clear();
+        executor.shutdownNow();
+    }
+}
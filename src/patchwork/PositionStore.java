@@ -0,0 +1,341 @@
+package patchwork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An append-only store of packed game states held outside the Java heap, for
+ * sets of positions far too large for objects. States are packed into
+ * fixed-size records inside large chunks, either direct buffers or regions of a
+ * memory-mapped file; the heap only holds one buffer object per chunk, so the
+ * store adds nothing for the garbage collector to trace or copy.
+ * <p>
+ * States are read back through a {@link Cursor} that walks the records in
+ * order and unpacks them into a reusable {@link GameState}.
+ */
+public final class PositionStore implements AutoCloseable {
+    private static final int MAGIC = 0x50575053; // "PWPS"
+    private static final int VERSION = 2; // 2 packs the forced mover with the last mover.
+    private static final int HEADER_BYTES = 32; // Magic, version, market capacity, chunk records, count.
+
+    private final PatchCatalog catalog; // The catalog of the stored states.
+    private final int marketCapacity; // The largest market a record can hold.
+    private final int recordBytes; // Size of a record.
+    private final int chunkRecords; // Records per chunk.
+    private final FileChannel channel; // The backing file, or null for a store in memory.
+    private final MappedByteBuffer header; // The mapped header of the backing file.
+    private final List<ByteBuffer> chunks = new ArrayList<>(); // The chunks, in order.
+    private long size; // Number of records.
+
+    private PositionStore(PatchCatalog catalog, int marketCapacity, int chunkRecords, FileChannel channel,
+            MappedByteBuffer header) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (marketCapacity < 0 || marketCapacity > 255 || chunkRecords < 1) {
+            throw new IllegalArgumentException("Invalid market capacity or chunk size");
+        }
+        this.marketCapacity = marketCapacity;
+        this.recordBytes = GameState.packedSize(marketCapacity);
+        if ((long) recordBytes * chunkRecords > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunks cannot exceed 2 GB");
+        }
+        this.chunkRecords = chunkRecords;
+        this.channel = channel;
+        this.header = header;
+    }
+
+    /**
+     * Creates a store in direct memory.
+     *
+     * @param catalog      The catalog of the stored states.
+     * @param chunkRecords The number of records per chunk of direct memory.
+     * @return The new store.
+     */
+    public static PositionStore inMemory(PatchCatalog catalog, int chunkRecords) {
+        return new PositionStore(catalog, catalog.size(), chunkRecords, null, null);
+    }
+
+    /**
+     * Creates a store backed by a memory-mapped file, replacing the file if it
+     * exists. The file grows by one chunk at a time.
+     *
+     * @param file         The backing file.
+     * @param catalog      The catalog of the stored states.
+     * @param chunkRecords The number of records per mapped chunk.
+     * @return The new store.
+     * @throws IOException if the file cannot be created.
+     */
+    public static PositionStore create(Path file, PatchCatalog catalog, int chunkRecords) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            var header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, catalog.size());
+            header.putInt(12, chunkRecords);
+            header.putLong(16, 0);
+            return new PositionStore(catalog, catalog.size(), chunkRecords, channel, header);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a store file written by {@link #create(Path, PatchCatalog, int)}, to
+     * read it or append to it.
+     *
+     * @param file    The backing file.
+     * @param catalog The catalog of the stored states.
+     * @return The store.
+     * @throws IOException              if the file cannot be opened.
+     * @throws IllegalArgumentException if the file is not a position store.
+     */
+    public static PositionStore open(Path file, PatchCatalog catalog) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            var header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Not a position store file");
+            }
+            var store = new PositionStore(catalog, header.getInt(8), header.getInt(12), channel, header);
+            long count = header.getLong(16);
+            while ((long) store.chunks.size() * store.chunkRecords < count) {
+                store.addChunk();
+            }
+            store.size = count;
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of stored states.
+     *
+     * @return The number of records.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the size of a record in bytes.
+     *
+     * @return The record size.
+     */
+    public int getRecordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * Appends a state.
+     *
+     * @param state The state to pack.
+     * @throws IOException              if the backing file cannot grow.
+     * @throws IllegalArgumentException if the state belongs to another catalog or its market is too large.
+     */
+    public void append(GameState state) throws IOException {
+        write(state);
+        commit();
+    }
+
+    /**
+     * Appends a range of states.
+     *
+     * @param states The states to pack.
+     * @param from   The index of the first state, inclusive.
+     * @param to     The index of the last state, exclusive.
+     * @throws IOException              if the backing file cannot grow.
+     * @throws IllegalArgumentException if a state belongs to another catalog or its market is too large.
+     */
+    public void appendAll(GameState[] states, int from, int to) throws IOException {
+        Objects.checkFromToIndex(from, to, states.length);
+        for (int i = from; i < to; i++) {
+            write(states[i]);
+        }
+        commit();
+    }
+
+    private void write(GameState state) throws IOException {
+        if (state.getCatalog() != catalog) {
+            throw new IllegalArgumentException("State of another catalog");
+        }
+        if (state.getMarketSize() > marketCapacity) {
+            throw new IllegalArgumentException("Market too large for this store");
+        }
+        int chunk = (int) (size / chunkRecords);
+        if (chunk == chunks.size()) {
+            addChunk();
+        }
+        state.writeTo(chunks.get(chunk), (int) (size % chunkRecords) * recordBytes);
+        size++;
+    }
+
+    private void commit() {
+        if (header != null) {
+            header.putLong(16, size);
+        }
+    }
+
+    private void addChunk() throws IOException {
+        long chunkBytes = (long) recordBytes * chunkRecords;
+        if (channel == null) {
+            chunks.add(ByteBuffer.allocateDirect((int) chunkBytes));
+        } else {
+            long position = HEADER_BYTES + chunks.size() * chunkBytes;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes));
+        }
+    }
+
+    /**
+     * Copies every state of this store into a new store backed by a
+     * memory-mapped file, so that an in-memory set can be moved to disk.
+     *
+     * @param file The backing file of the copy.
+     * @return The copy; this store is left unchanged.
+     * @throws IOException if the file cannot be written.
+     */
+    public PositionStore spill(Path file) throws IOException {
+        var copy = create(file, catalog, chunkRecords);
+        try {
+            for (int i = 0; i < chunks.size() && (long) i * chunkRecords < size; i++) {
+                copy.addChunk();
+                int records = (int) Math.min(chunkRecords, size - (long) i * chunkRecords);
+                var source = chunks.get(i).duplicate().position(0).limit(records * recordBytes);
+                copy.chunks.get(i).duplicate().position(0).put(source);
+            }
+            copy.size = size;
+            copy.commit();
+            return copy;
+        } catch (IOException | RuntimeException e) {
+            copy.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a cursor positioned before the first state.
+     *
+     * @return The new cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Writes the mapped chunks back to the file and closes it; a store in memory
+     * only drops its chunks.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            for (var chunk : chunks) {
+                ((MappedByteBuffer) chunk).force();
+            }
+            header.force();
+            channel.close();
+        }
+        chunks.clear();
+        size = 0;
+    }
+
+    /**
+     * A forward cursor over the states of the store. Reading a field does not
+     * unpack the whole state.
+     */
+    public final class Cursor {
+        private long index = -1; // Index of the current record.
+        private ByteBuffer chunk; // Chunk of the current record.
+        private int offset; // Offset of the current record in its chunk.
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next state.
+         *
+         * @return True if there is a next state, false at the end of the store.
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            index++;
+            chunk = chunks.get((int) (index / chunkRecords));
+            offset = (int) (index % chunkRecords) * recordBytes;
+            return true;
+        }
+
+        /**
+         * Returns the index of the current state.
+         *
+         * @return The index, or -1 before the first call to {@link #next()}.
+         */
+        public long index() {
+            return index;
+        }
+
+        /**
+         * Unpacks the current state into a state of the same catalog.
+         *
+         * @param target The state to overwrite.
+         * @throws IllegalStateException if the cursor is not on a state.
+         */
+        public void read(GameState target) {
+            checkPosition();
+            if (target.getCatalog() != catalog) {
+                throw new IllegalArgumentException("State of another catalog");
+            }
+            target.readFrom(chunk, offset);
+        }
+
+        /**
+         * Returns the buttons of a player in the current state.
+         *
+         * @param player The player (0 or 1).
+         * @return The buttons of the player.
+         */
+        public int getButtons(int player) {
+            checkPosition();
+            return chunk.getShort(offset + 2 * player);
+        }
+
+        /**
+         * Returns the position of a player in the current state.
+         *
+         * @param player The player (0 or 1).
+         * @return The position of the player.
+         */
+        public int getPosition(int player) {
+            checkPosition();
+            return chunk.get(offset + 4 + player) & 0xff;
+        }
+
+        /**
+         * Returns the number of patches left in the market of the current state.
+         *
+         * @return The market size.
+         */
+        public int getMarketSize() {
+            checkPosition();
+            return chunk.get(offset + 10) & 0xff;
+        }
+
+        private void checkPosition() {
+            if (chunk == null) {
+                throw new IllegalStateException("The cursor is not on a state");
+            }
+        }
+    }
+}
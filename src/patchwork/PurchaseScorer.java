@@ -0,0 +1,103 @@
+package patchwork;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Scores every patch of a catalog as a purchase in one pass over its primitive
+ * arrays. The score of a patch is its value, two points per covered square plus
+ * its income over the remaining paydays minus its cost, divided by the time it
+ * takes; patches the player cannot afford, and patches missing from the set of
+ * placeable patches given by the caller, score negative infinity.
+ * <p>
+ * When the JVM is started with {@code --add-modules jdk.incubator.vector}, the
+ * pass runs on the incubator Vector API; otherwise a scalar loop computes the
+ * same scores.
+ */
+public final class PurchaseScorer {
+    private static final boolean VECTORIZED = vectorApiAvailable();
+
+    private PurchaseScorer() {
+    }
+
+    private static boolean vectorApiAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            Class.forName("patchwork.VectorPurchaseScorer");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if scoring runs on the Vector API.
+     *
+     * @return True if the Vector API is used.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Scores every patch of a catalog.
+     *
+     * @param catalog   The patches to score.
+     * @param buttons   The buttons of the buying player.
+     * @param paydays   The number of income paydays left to the buying player.
+     * @param placeable The patches that fit the buyer's patchwork, bit {@code id % 64} of word {@code id / 64}.
+     * @param out       The array receiving one score per patch identifier.
+     * @throws IllegalArgumentException if an array is shorter than the catalog.
+     */
+    public static void scoreAll(PatchCatalog catalog, int buttons, int paydays, long[] placeable, float[] out) {
+        Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (out.length < catalog.size() || placeable.length < (catalog.size() + 63) >>> 6) {
+            throw new IllegalArgumentException("Output or placeable array is too short");
+        }
+        if (VECTORIZED) {
+            VectorPurchaseScorer.scoreAll(catalog.cost, catalog.time, catalog.income, catalog.area, catalog.size(),
+                    buttons, paydays, placeable, out);
+        } else {
+            scoreRange(catalog.cost, catalog.time, catalog.income, catalog.area, 0, catalog.size(), buttons, paydays,
+                    placeable, out);
+        }
+    }
+
+    /**
+     * Scores the patches offered to the player to move in a state; every other
+     * patch of the catalog, and every offered patch that does not fit, scores
+     * negative infinity.
+     *
+     * @param state     The state; it is not modified.
+     * @param placeable A scratch array of at least {@code (catalog size + 63) / 64} words.
+     * @param out       The array receiving one score per patch identifier.
+     * @throws IllegalArgumentException if an array is shorter than the catalog.
+     */
+    public static void scoreOffers(GameState state, long[] placeable, float[] out) {
+        int player = state.getCurrentPlayer();
+        Arrays.fill(placeable, 0);
+        for (int slots = state.getPlaceableSlots(player); slots != 0; slots &= slots - 1) {
+            int id = state.getOffered(Integer.numberOfTrailingZeros(slots));
+            placeable[id >>> 6] |= 1L << id;
+        }
+        scoreAll(state.getCatalog(), state.getButtons(player), state.getRemainingPaydays(player), placeable, out);
+    }
+
+    // Scalar scoring of the identifiers in [from, to); also the tail of the vector loop.
+    static void scoreRange(int[] cost, int[] time, int[] income, int[] area, int from, int to, int buttons,
+            int paydays, long[] placeable, float[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = (placeable[i >>> 6] & 1L << i) == 0 ? Float.NEGATIVE_INFINITY
+                    : score(cost[i], time[i], income[i], area[i], buttons, paydays);
+        }
+    }
+
+    private static float score(int cost, int time, int income, int area, int buttons, int paydays) {
+        if (cost > buttons || area == 0) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return (float) (2 * area + income * paydays - cost) / Math.max(time, 1);
+    }
+}
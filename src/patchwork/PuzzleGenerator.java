@@ -0,0 +1,271 @@
+package patchwork;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Generates placement puzzles in bulk: a partly covered patchwork and a set of
+ * catalog patches that must fill its empty squares exactly.
+ * <p>
+ * A puzzle is built backwards from its solution. Distinct random patches are
+ * dropped one by one on an empty patchwork, each touching the ones before, and
+ * every square they do not cover becomes a covered square of the puzzle. The
+ * {@link TilingSolver} then counts the exact covers, stopping at two, and only
+ * puzzles with a single solution are kept; the nodes of that count grade the
+ * difficulty. Each puzzle is derived from the seed of the run and its index,
+ * so a run gives the same puzzles whatever the number of threads.
+ */
+public final class PuzzleGenerator {
+    private static final int SIZE = GameState.QUILT_SIZE;
+    private static final long FULL_ROW = (1L << SIZE) - 1;
+    private static final long[] GRADE_NODES = {40, 160, 640, 2560}; // Node counts separating the grades.
+
+    private final PatchCatalog catalog; // The patches of the puzzles.
+    private final int minPieces; // Fewest patches of a puzzle.
+    private final int maxPieces; // Most patches of a puzzle.
+    private final int maxAttempts; // Candidates tried per puzzle before giving up.
+
+    /**
+     * A puzzle with a unique solution.
+     */
+    public static final class Puzzle {
+        private final long index; // Index of the puzzle in its run.
+        private final long[] board; // Covered squares, one mask per row.
+        private final int[] patchIds; // Patches to place, ascending.
+        private final List<Placement> solution; // The only exact cover.
+        private final long nodes; // Nodes of the uniqueness check.
+
+        private Puzzle(long index, long[] board, int[] patchIds, List<Placement> solution, long nodes) {
+            this.index = index;
+            this.board = board;
+            this.patchIds = patchIds;
+            this.solution = List.copyOf(solution);
+            this.nodes = nodes;
+        }
+
+        /**
+         * Returns the index of the puzzle in its run.
+         *
+         * @return The index.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the covered squares of the patchwork.
+         *
+         * @return One mask per row, bit {@code col} set when covered.
+         */
+        public long[] getBoard() {
+            return board.clone();
+        }
+
+        /**
+         * Returns the patches that fill the patchwork.
+         *
+         * @return The catalog identifiers, ascending.
+         */
+        public int[] getPatchIds() {
+            return patchIds.clone();
+        }
+
+        /**
+         * Returns the solution of the puzzle.
+         *
+         * @return The placements of the patches.
+         */
+        public List<Placement> getSolution() {
+            return solution;
+        }
+
+        /**
+         * Returns the number of search nodes needed to prove the solution unique.
+         *
+         * @return The node count.
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the difficulty of the puzzle, from its search nodes.
+         *
+         * @return The grade, from 1 (easiest) to 5.
+         */
+        public int getGrade() {
+            int grade = 1;
+            while (grade <= GRADE_NODES.length && nodes > GRADE_NODES[grade - 1]) {
+                grade++;
+            }
+            return grade;
+        }
+
+        @Override
+        public String toString() {
+            var builder = new StringBuilder();
+            builder.append("Puzzle ").append(index).append(" (grade ").append(getGrade()).append(", ")
+                    .append(nodes).append(" nodes), patches ").append(Arrays.toString(patchIds)).append('\n');
+            for (long row : board) {
+                for (int col = 0; col < SIZE; col++) {
+                    builder.append((row & 1L << col) != 0 ? '#' : '.');
+                }
+                builder.append('\n');
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Creates a generator.
+     *
+     * @param catalog     The patches of the puzzles.
+     * @param minPieces   The fewest patches of a puzzle.
+     * @param maxPieces   The most patches of a puzzle, at most the catalog size and 64.
+     * @param maxAttempts The number of candidates tried per puzzle before giving up on it.
+     * @throws IllegalArgumentException if the piece counts or the number of attempts are out of range.
+     */
+    public PuzzleGenerator(PatchCatalog catalog, int minPieces, int maxPieces, int maxAttempts) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (minPieces < 1 || maxPieces < minPieces || maxPieces > Math.min(64, catalog.size()) || maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid piece counts or attempts");
+        }
+        this.minPieces = minPieces;
+        this.maxPieces = maxPieces;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Generates the puzzles of a run on a fork-join pool.
+     *
+     * @param seed  The seed of the run.
+     * @param first The index of the first puzzle.
+     * @param count The number of puzzles.
+     * @param pool  The pool generating the puzzles.
+     * @return The puzzles, by index; indexes whose attempts all failed are missing.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public List<Puzzle> generate(long seed, long first, int count, ForkJoinPool pool) throws InterruptedException {
+        Objects.requireNonNull(pool, "Pool cannot be null");
+        try {
+            return pool.submit(() -> LongStream.range(first, first + count).parallel()
+                    .mapToObj(index -> generate(seed, index)).filter(Objects::nonNull)
+                    .collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Puzzle generation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Generates one puzzle of a run.
+     *
+     * @param seed  The seed of the run.
+     * @param index The index of the puzzle.
+     * @return The puzzle, or null if no candidate had a unique solution.
+     */
+    public Puzzle generate(long seed, long index) {
+        // Splitting gives neighbouring indexes unrelated sequences.
+        var random = new SplittableRandom(seed + index).split();
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            var puzzle = candidate(index, random);
+            if (puzzle != null) {
+                return puzzle;
+            }
+        }
+        return null;
+    }
+
+    // Drops random touching patches on an empty patchwork, then keeps the result if its cover is unique.
+    private Puzzle candidate(long index, SplittableRandom random) {
+        int pieces = minPieces + random.nextInt(maxPieces - minPieces + 1);
+        int[] ids = DealGenerator.shuffled(catalog.size(), random.nextLong());
+        var region = new long[SIZE];
+        var solution = new ArrayList<Placement>();
+        var options = new ArrayList<Placement>();
+        for (int n = 0; n < catalog.size() && solution.size() < pieces; n++) {
+            int id = ids[n];
+            options.clear();
+            var orientations = catalog.orientations(id);
+            for (int o = 0; o < orientations.size(); o++) {
+                var orientation = orientations.get(o);
+                for (int row = 0; row + orientation.getHeight() <= SIZE; row++) {
+                    for (int col = 0; col + orientation.getWidth() <= SIZE; col++) {
+                        if (orientation.fits(region, row, col)
+                                && (solution.isEmpty() || touches(region, orientation, row, col))) {
+                            options.add(new Placement(id, o, row, col));
+                        }
+                    }
+                }
+            }
+            if (!options.isEmpty()) {
+                var placement = options.get(random.nextInt(options.size()));
+                catalog.orientations(id).get(placement.getOrientation())
+                        .place(region, placement.getRow(), placement.getCol());
+                solution.add(placement);
+            }
+        }
+        if (solution.size() < minPieces) {
+            return null;
+        }
+        var board = new long[SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            board[row] = ~region[row] & FULL_ROW;
+        }
+        int[] patchIds = solution.stream().mapToInt(Placement::getPatchId).sorted().toArray();
+        var solver = new TilingSolver(catalog, patchIds, board);
+        if (solver.countExactCovers(2) != 1) {
+            return null;
+        }
+        return new Puzzle(index, board, patchIds, solution, solver.getNodes());
+    }
+
+    // True if the placement shares an edge with the region.
+    private static boolean touches(long[] region, PatchOrientation orientation, int row, int col) {
+        for (int i = 0; i < orientation.getHeight(); i++) {
+            int r = row + i;
+            long around = region[r] << 1 | region[r] >>> 1 | (r > 0 ? region[r - 1] : 0)
+                    | (r + 1 < SIZE ? region[r + 1] : 0);
+            if ((orientation.getRowMask(i) << col & around) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prints the puzzles of a run, hardest first.
+     *
+     * @param args The number of puzzles, then optionally the seed, the fewest and the most patches per puzzle.
+     * @throws InterruptedException if interrupted while generating.
+     * @throws IOException          if the catalog cannot be read.
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PuzzleGenerator <count> [seed] [minPieces] [maxPieces]");
+            return;
+        }
+        int count = Integer.parseInt(args[0]);
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int minPieces = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int maxPieces = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        var catalog = PatchCatalog.load(Paths.get("data/dataPatch.data"));
+        var generator = new PuzzleGenerator(catalog, minPieces, maxPieces, 1000);
+        long start = System.nanoTime();
+        var puzzles = new ArrayList<>(generator.generate(seed, 0, count, ForkJoinPool.commonPool()));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        puzzles.sort((a, b) -> Long.compare(b.getNodes(), a.getNodes()));
+        for (var puzzle : puzzles) {
+            System.out.println(puzzle);
+        }
+        System.out.printf("%d puzzles in %.2f s%n", puzzles.size(), seconds);
+    }
+}
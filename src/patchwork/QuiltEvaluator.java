@@ -0,0 +1,310 @@
+package patchwork;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Measures how easy a patchwork will be to fill. The evaluator keeps the empty
+ * regions of a board as per-row bit masks, found by bit-parallel flood fill, so
+ * that the features of a candidate placement are derived by re-filling only the
+ * regions the placement touches.
+ * <p>
+ * Features are written into an {@code int[]} indexed by the constants of this
+ * class.
+ */
+public final class QuiltEvaluator {
+    /**
+     * Index of the number of empty squares.
+     */
+    public static final int EMPTY = 0;
+    /**
+     * Index of the number of connected empty regions.
+     */
+    public static final int REGIONS = 1;
+    /**
+     * Index of the size of the largest empty region.
+     */
+    public static final int LARGEST_REGION = 2;
+    /**
+     * Index of the number of isolated single-square holes.
+     */
+    public static final int HOLES = 3;
+    /**
+     * Index of the number of empty regions of two to four squares.
+     */
+    public static final int SMALL_REGIONS = 4;
+    /**
+     * Index of the number of sides between an empty square and a covered square
+     * or the border of the patchwork.
+     */
+    public static final int EDGE_CONTACT = 5;
+    /**
+     * Index of the number of empty squares outside the largest region.
+     */
+    public static final int FRAGMENTATION = 6;
+    /**
+     * The length of a feature vector.
+     */
+    public static final int FEATURE_COUNT = 7;
+
+    private static final int SIZE = GameState.QUILT_SIZE;
+    private static final long FULL_ROW = (1L << SIZE) - 1;
+    private static final int MAX_REGIONS = (SIZE * SIZE + 1) / 2;
+
+    private final long[] board = new long[SIZE]; // Occupancy of the evaluated board.
+    private final long[][] regions = new long[MAX_REGIONS][SIZE]; // Empty regions of the board.
+    private final int[] regionSizes = new int[MAX_REGIONS]; // Size of each empty region.
+    private int regionCount; // Number of empty regions.
+
+    private final long[] candidate = new long[SIZE]; // Occupancy after a candidate placement.
+    private final long[] placed = new long[SIZE]; // Squares covered by a candidate placement.
+    private final long[] remaining = new long[SIZE]; // Scratch area left to split into regions.
+    private final long[][] split = new long[MAX_REGIONS][SIZE]; // Regions created by a candidate placement.
+    private final int[] splitSizes = new int[MAX_REGIONS]; // Size of each created region.
+    private final boolean[] touched = new boolean[MAX_REGIONS]; // Regions overlapped by a candidate placement.
+
+    /**
+     * Creates an evaluator for an empty patchwork.
+     */
+    public QuiltEvaluator() {
+        rebuild();
+    }
+
+    /**
+     * Loads the occupancy of a patchwork.
+     *
+     * @param patchwork The patchwork to evaluate.
+     * @throws IllegalArgumentException if the patchwork is not the size of a headless quilt.
+     */
+    public void load(Patchwork patchwork) {
+        Objects.requireNonNull(patchwork, "Patchwork cannot be null");
+        if (patchwork.getWidth() != SIZE || patchwork.getHeight() != SIZE) {
+            throw new IllegalArgumentException("Only " + SIZE + "x" + SIZE + " patchworks are evaluated");
+        }
+        for (int row = 0; row < SIZE; row++) {
+            board[row] = patchwork.getRowMask(row);
+        }
+        rebuild();
+    }
+
+    /**
+     * Loads the occupancy of a player's patchwork in a headless state.
+     *
+     * @param state  The state to read.
+     * @param player The player whose patchwork is evaluated.
+     */
+    public void load(GameState state, int player) {
+        Objects.requireNonNull(state, "State cannot be null");
+        for (int row = 0; row < SIZE; row++) {
+            board[row] = state.getQuiltRow(player, row);
+        }
+        rebuild();
+    }
+
+    /**
+     * Writes the features of the loaded board.
+     *
+     * @param out The array receiving {@link #FEATURE_COUNT} features.
+     */
+    public void features(int[] out) {
+        clearTouched();
+        summarize(board, 0, out);
+    }
+
+    /**
+     * Writes the features the loaded board would have after placing a patch,
+     * without modifying the board. Only the empty regions covered by the patch
+     * are flood-filled again.
+     *
+     * @param orientation The orientation of the patch.
+     * @param row         The row of the top-left corner of the placement.
+     * @param col         The column of the top-left corner of the placement.
+     * @param out         The array receiving {@link #FEATURE_COUNT} features.
+     * @throws IllegalArgumentException if the patch does not fit at these coordinates.
+     */
+    public void evaluatePlacement(PatchOrientation orientation, int row, int col, int[] out) {
+        int created = splitPlacement(orientation, row, col);
+        summarize(candidate, created, out);
+    }
+
+    /**
+     * Places a patch on the loaded board, updating the regions incrementally.
+     *
+     * @param orientation The orientation of the patch.
+     * @param row         The row of the top-left corner of the placement.
+     * @param col         The column of the top-left corner of the placement.
+     * @throws IllegalArgumentException if the patch does not fit at these coordinates.
+     */
+    public void place(PatchOrientation orientation, int row, int col) {
+        int created = splitPlacement(orientation, row, col);
+        System.arraycopy(candidate, 0, board, 0, SIZE);
+        int kept = 0;
+        for (int r = 0; r < regionCount; r++) {
+            if (!touched[r]) {
+                System.arraycopy(regions[r], 0, regions[kept], 0, SIZE);
+                regionSizes[kept++] = regionSizes[r];
+            }
+        }
+        for (int s = 0; s < created; s++) {
+            System.arraycopy(split[s], 0, regions[kept], 0, SIZE);
+            regionSizes[kept++] = splitSizes[s];
+        }
+        regionCount = kept;
+        clearTouched();
+    }
+
+    // Marks the regions covered by a placement and splits what is left of them into new regions.
+    private int splitPlacement(PatchOrientation orientation, int row, int col) {
+        Objects.requireNonNull(orientation, "Orientation cannot be null");
+        if (row < 0 || col < 0 || row + orientation.getHeight() > SIZE || col + orientation.getWidth() > SIZE
+                || !orientation.fits(board, row, col)) {
+            throw new IllegalArgumentException("The patch cannot be placed at " + row + "," + col);
+        }
+        Arrays.fill(placed, 0);
+        orientation.place(placed, row, col);
+        for (int i = 0; i < SIZE; i++) {
+            candidate[i] = board[i] | placed[i];
+        }
+
+        int created = 0;
+        for (int r = 0; r < regionCount; r++) {
+            touched[r] = intersects(regions[r], placed);
+            if (!touched[r]) {
+                continue;
+            }
+            for (int i = 0; i < SIZE; i++) {
+                remaining[i] = regions[r][i] & ~placed[i];
+            }
+            created = splitInto(remaining, created);
+        }
+        return created;
+    }
+
+    private void rebuild() {
+        for (int i = 0; i < SIZE; i++) {
+            remaining[i] = ~board[i] & FULL_ROW;
+        }
+        clearTouched();
+        regionCount = 0;
+        int found = splitInto(remaining, 0);
+        for (int s = 0; s < found; s++) {
+            System.arraycopy(split[s], 0, regions[s], 0, SIZE);
+            regionSizes[s] = splitSizes[s];
+        }
+        regionCount = found;
+    }
+
+    // Splits an area into connected regions appended to split from index first; the area is consumed.
+    private int splitInto(long[] area, int first) {
+        int count = first;
+        for (int i = 0; i < SIZE; i++) {
+            while (area[i] != 0) {
+                long[] region = split[count];
+                Arrays.fill(region, 0);
+                region[i] = Long.lowestOneBit(area[i]);
+                splitSizes[count] = floodFill(area, region);
+                for (int j = 0; j < SIZE; j++) {
+                    area[j] &= ~region[j];
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Grows a seed to its 4-connected component within an area, a whole row of
+     * bits at a time, and returns the number of squares of the component.
+     *
+     * @param area The squares the fill may reach, one mask per row.
+     * @param fill The seed, replaced by the component.
+     * @return The size of the component.
+     */
+    static int floodFill(long[] area, long[] fill) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < fill.length; i++) {
+                long grown = fill[i] | fill[i] << 1 | fill[i] >>> 1;
+                if (i > 0) {
+                    grown |= fill[i - 1];
+                }
+                if (i + 1 < fill.length) {
+                    grown |= fill[i + 1];
+                }
+                grown &= area[i];
+                if (grown != fill[i]) {
+                    fill[i] = grown;
+                    changed = true;
+                }
+            }
+        }
+        int size = 0;
+        for (long row : fill) {
+            size += Long.bitCount(row);
+        }
+        return size;
+    }
+
+    // Aggregates the untouched regions, the created regions and the edge contact of an occupancy.
+    private void summarize(long[] occupancy, int created, int[] out) {
+        int empty = 0;
+        int count = 0;
+        int largest = 0;
+        int holes = 0;
+        int small = 0;
+        for (int r = 0; r < regionCount + created; r++) {
+            int size;
+            if (r < regionCount) {
+                if (touched[r]) {
+                    continue;
+                }
+                size = regionSizes[r];
+            } else {
+                size = splitSizes[r - regionCount];
+            }
+            empty += size;
+            count++;
+            largest = Math.max(largest, size);
+            if (size == 1) {
+                holes++;
+            } else if (size <= 4) {
+                small++;
+            }
+        }
+        out[EMPTY] = empty;
+        out[REGIONS] = count;
+        out[LARGEST_REGION] = largest;
+        out[HOLES] = holes;
+        out[SMALL_REGIONS] = small;
+        out[EDGE_CONTACT] = edgeContact(occupancy);
+        out[FRAGMENTATION] = empty - largest;
+    }
+
+    private static int edgeContact(long[] occupancy) {
+        int sides = 0;
+        for (int i = 0; i < SIZE; i++) {
+            long empty = ~occupancy[i] & FULL_ROW;
+            long above = i > 0 ? ~occupancy[i - 1] & FULL_ROW : 0;
+            long below = i + 1 < SIZE ? ~occupancy[i + 1] & FULL_ROW : 0;
+            sides += Long.bitCount(empty & ~(empty << 1));
+            sides += Long.bitCount(empty & ~(empty >>> 1));
+            sides += Long.bitCount(empty & ~above);
+            sides += Long.bitCount(empty & ~below);
+        }
+        return sides;
+    }
+
+    private static boolean intersects(long[] a, long[] b) {
+        for (int i = 0; i < SIZE; i++) {
+            if ((a[i] & b[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearTouched() {
+        Arrays.fill(touched, false);
+    }
+}
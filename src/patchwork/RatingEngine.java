@@ -0,0 +1,363 @@
+package patchwork;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Elo ratings of a ladder of agents, updated from a stream of game results.
+ * <p>
+ * Results are queued and applied in batches: every result of a batch is rated
+ * against the ratings as they stood when the batch began, as in an Elo rating
+ * period, so the order of games inside a batch does not matter and a batch is
+ * a single pass over primitive arrays. Agents are numbered as they are first
+ * seen, and their ratings, game counts and batch deltas live in parallel
+ * arrays indexed by that number.
+ * <p>
+ * Whole histories are re-rated by {@link #rate(BufferedReader)}, which reads a
+ * result log line by line; memory grows with the number of agents, not games.
+ */
+public final class RatingEngine {
+    /**
+     * The rating of an agent that has not played.
+     */
+    public static final double INITIAL_RATING = 1500;
+
+    private final double k; // Largest rating change of a single game.
+    private final int batchSize; // Results queued before they are applied.
+    private final Map<String, Integer> ids = new HashMap<>(); // Agent numbers by name.
+    private final List<String> names = new ArrayList<>(); // Agent names by number.
+    private double[] ratings = new double[16]; // Rating of each agent.
+    private double[] deltas = new double[16]; // Change of each agent in the current batch.
+    private int[] games = new int[16]; // Games rated of each agent.
+    private final int[] pendingFirst; // First agent of each queued result.
+    private final int[] pendingSecond; // Second agent of each queued result.
+    private final float[] pendingOutcome; // Outcome for the first agent of each queued result.
+    private int pending; // Number of queued results.
+    private long rated; // Number of results applied.
+
+    /**
+     * Creates an engine.
+     *
+     * @param k         The largest rating change of a single game, greater than 0.
+     * @param batchSize The number of results applied together, at least 1.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    public RatingEngine(double k, int batchSize) {
+        if (!(k > 0) || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid K-factor or batch size");
+        }
+        this.k = k;
+        this.batchSize = batchSize;
+        this.pendingFirst = new int[batchSize];
+        this.pendingSecond = new int[batchSize];
+        this.pendingOutcome = new float[batchSize];
+    }
+
+    /**
+     * Returns the number of an agent, registering it with the initial rating if
+     * it is new.
+     *
+     * @param name The name of the agent.
+     * @return The number of the agent.
+     */
+    public int agent(String name) {
+        Objects.requireNonNull(name, "Name cannot be null");
+        var id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int next = names.size();
+        if (next == ratings.length) {
+            int capacity = next * 2;
+            ratings = Arrays.copyOf(ratings, capacity);
+            deltas = Arrays.copyOf(deltas, capacity);
+            games = Arrays.copyOf(games, capacity);
+        }
+        ratings[next] = INITIAL_RATING;
+        ids.put(name, next);
+        names.add(name);
+        return next;
+    }
+
+    /**
+     * Queues a game result.
+     *
+     * @param result The result.
+     */
+    public void record(GameResult result) {
+        record(agent(result.getAgent(0)), agent(result.getAgent(1)), result.getOutcome());
+    }
+
+    /**
+     * Queues the result of a game between two agents.
+     *
+     * @param first   The number of the first agent.
+     * @param second  The number of the second agent.
+     * @param outcome The outcome for the first agent: 1 for a win, 0.5 for a tie, 0 for a loss.
+     * @throws IllegalArgumentException if an agent is unknown, the agents are the same, or the
+     *                                  outcome is not between 0 and 1.
+     */
+    public void record(int first, int second, double outcome) {
+        if (first < 0 || first >= names.size() || second < 0 || second >= names.size() || first == second) {
+            throw new IllegalArgumentException("Invalid agents");
+        }
+        if (!(outcome >= 0 && outcome <= 1)) {
+            throw new IllegalArgumentException("Outcome must be between 0 and 1");
+        }
+        pendingFirst[pending] = first;
+        pendingSecond[pending] = second;
+        pendingOutcome[pending] = (float) outcome;
+        if (++pending == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies the queued results.
+     */
+    public void flush() {
+        for (int i = 0; i < pending; i++) {
+            int a = pendingFirst[i];
+            int b = pendingSecond[i];
+            double change = k * (pendingOutcome[i] - expected(ratings[a], ratings[b]));
+            deltas[a] += change;
+            deltas[b] -= change;
+            games[a]++;
+            games[b]++;
+        }
+        for (int i = 0; i < pending; i++) {
+            apply(pendingFirst[i]);
+            apply(pendingSecond[i]);
+        }
+        rated += pending;
+        pending = 0;
+    }
+
+    private void apply(int agent) {
+        ratings[agent] += deltas[agent];
+        deltas[agent] = 0;
+    }
+
+    /**
+     * Returns the expected outcome of a game between two ratings.
+     *
+     * @param rating   The rating of the first agent.
+     * @param opponent The rating of the second agent.
+     * @return The expected outcome for the first agent, between 0 and 1.
+     */
+    public static double expected(double rating, double opponent) {
+        return 1 / (1 + Math.pow(10, (opponent - rating) / 400));
+    }
+
+    /**
+     * Reads a result log and rates every game of it, one line at a time. Each
+     * line holds the two agent names and the outcome for the first one,
+     * separated by tabs, as written by {@link #toLine(GameResult)}; blank lines
+     * are skipped.
+     *
+     * @param reader The log.
+     * @return The number of results read.
+     * @throws IOException              if the log cannot be read.
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    public long rate(BufferedReader reader) throws IOException {
+        long count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            int first = line.indexOf('\t');
+            int second = line.indexOf('\t', first + 1);
+            if (first < 0 || second < 0) {
+                throw new IllegalArgumentException("Malformed result: " + line);
+            }
+            double outcome;
+            try {
+                outcome = Double.parseDouble(line.substring(second + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed result: " + line, e);
+            }
+            record(agent(line.substring(0, first)), agent(line.substring(first + 1, second)), outcome);
+            count++;
+        }
+        flush();
+        return count;
+    }
+
+    /**
+     * Rates every game of a result log file.
+     *
+     * @param log The log file.
+     * @return The number of results read.
+     * @throws IOException if the file cannot be read.
+     * @see #rate(BufferedReader)
+     */
+    public long rate(Path log) throws IOException {
+        try (var reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            return rate(reader);
+        }
+    }
+
+    /**
+     * Formats a result as a line of a result log, without the line separator.
+     *
+     * @param result The result.
+     * @return The line.
+     */
+    public static String toLine(GameResult result) {
+        return result.getAgent(0) + '\t' + result.getAgent(1) + '\t' + result.getOutcome();
+    }
+
+    /**
+     * Returns the number of known agents.
+     *
+     * @return The agent count.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the number of results applied, not counting queued ones.
+     *
+     * @return The rated game count.
+     */
+    public long getRated() {
+        return rated;
+    }
+
+    /**
+     * Returns the rating of an agent, not counting queued results.
+     *
+     * @param agent The number of the agent.
+     * @return The rating.
+     */
+    public double getRating(int agent) {
+        Objects.checkIndex(agent, names.size());
+        return ratings[agent];
+    }
+
+    /**
+     * Returns the best agents, highest rating first. Only the leaders are
+     * sorted: the others are filtered through a heap of the given size.
+     *
+     * @param limit The maximum number of agents to return.
+     * @return The standings.
+     */
+    public List<Standing> leaderboard(int limit) {
+        int n = Math.min(Math.max(limit, 0), names.size());
+        var heap = new int[n]; // Min-heap of agent numbers by rating.
+        int count = 0;
+        for (int agent = 0; agent < names.size(); agent++) {
+            if (count < n) {
+                heap[count] = agent;
+                siftUp(heap, count++);
+            } else if (n > 0 && ratings[agent] > ratings[heap[0]]) {
+                heap[0] = agent;
+                siftDown(heap, count);
+            }
+        }
+        var standings = new ArrayList<Standing>(count);
+        while (count > 0) {
+            int agent = heap[0];
+            heap[0] = heap[--count];
+            siftDown(heap, count);
+            standings.add(new Standing(names.get(agent), ratings[agent], games[agent]));
+        }
+        Collections.reverse(standings);
+        return standings;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (ratings[heap[parent]] <= ratings[heap[i]]) {
+                return;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = swap;
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int count) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < count && ratings[heap[left]] < ratings[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < count && ratings[heap[right]] < ratings[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            int swap = heap[smallest];
+            heap[smallest] = heap[i];
+            heap[i] = swap;
+            i = smallest;
+        }
+    }
+
+    /**
+     * A row of the leaderboard.
+     */
+    public static final class Standing {
+        private final String name; // Name of the agent.
+        private final double rating; // Rating of the agent.
+        private final int games; // Games rated of the agent.
+
+        private Standing(String name, double rating, int games) {
+            this.name = name;
+            this.rating = rating;
+            this.games = games;
+        }
+
+        /**
+         * Returns the name of the agent.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the rating of the agent.
+         *
+         * @return The rating.
+         */
+        public double getRating() {
+            return rating;
+        }
+
+        /**
+         * Returns the number of games rated of the agent.
+         *
+         * @return The game count.
+         */
+        public int getGames() {
+            return games;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.0f (%d games)", name, rating, games);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package patchwork;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming statistics over a result file written by {@link ResultStore}. Only
+ * the block headers are read up front; a scan then maps each block read-only,
+ * inflates just the columns it asked for and folds them into a partial
+ * aggregate. Blocks are scanned in parallel and the partial aggregates
+ * combined, so memory stays bounded by one block per thread whatever the size
+ * of the file.
+ */
+public final class ResultAggregator implements AutoCloseable {
+    private final FileChannel channel; // The result file.
+    private final int columnCount; // Columns per block.
+    private final List<Long> offsets = new ArrayList<>(); // Offset of each block.
+    private final List<int[]> lengths = new ArrayList<>(); // Raw and compressed length of each column, per block.
+    private final List<Integer> rows = new ArrayList<>(); // Rows of each block.
+    private final List<String> agents = new ArrayList<>(); // Agent names by number.
+    private long size; // Rows of the file.
+
+    /**
+     * Folds a block of rows into a partial aggregate.
+     *
+     * @param <A> The type of the aggregate.
+     */
+    @FunctionalInterface
+    public interface BlockVisitor<A> {
+        /**
+         * Folds a block.
+         *
+         * @param aggregate The partial aggregate.
+         * @param rows      The number of rows of the block.
+         * @param columns   The values of the block by column; only the requested columns are filled.
+         */
+        void visit(A aggregate, int rows, long[][] columns);
+    }
+
+    private ResultAggregator(FileChannel channel) throws IOException {
+        this.channel = channel;
+        var header = read(0, ResultStore.HEADER_BYTES);
+        if (header.getInt(0) != ResultStore.MAGIC || header.getInt(4) != ResultStore.VERSION) {
+            throw new IllegalArgumentException("Not a result file");
+        }
+        this.columnCount = header.getInt(8);
+        long offset = ResultStore.HEADER_BYTES;
+        while (true) {
+            int blockRows = read(offset, 4).getInt(0);
+            if (blockRows == 0) {
+                break;
+            }
+            var blockHeader = read(offset + 4, 8 * columnCount);
+            var blockLengths = new int[2 * columnCount];
+            long payload = 0;
+            for (int i = 0; i < blockLengths.length; i++) {
+                blockLengths[i] = blockHeader.getInt(4 * i);
+                payload += i % 2 == 1 ? blockLengths[i] : 0;
+            }
+            offsets.add(offset);
+            lengths.add(blockLengths);
+            rows.add(blockRows);
+            size += blockRows;
+            offset += 4 + 8L * columnCount + payload;
+        }
+        // The names are not closed: closing them would close the channel.
+        var names = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(offset + 4))));
+        int agentCount = names.readInt();
+        for (int i = 0; i < agentCount; i++) {
+            agents.add(names.readUTF());
+        }
+    }
+
+    /**
+     * Opens a result file.
+     *
+     * @param file The file.
+     * @return The aggregator.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a result file.
+     */
+    public static ResultAggregator open(Path file) throws IOException {
+        var channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ResultAggregator(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalArgumentException("Truncated result file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Returns the number of rows of the file.
+     *
+     * @return The row count.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the name of an agent.
+     *
+     * @param agent The number of the agent, as stored in {@link ResultStore#AGENT0} and
+     *              {@link ResultStore#AGENT1}.
+     * @return The name.
+     */
+    public String getAgent(int agent) {
+        return agents.get(agent);
+    }
+
+    /**
+     * Scans some columns of every block, in parallel.
+     *
+     * @param <A>       The type of the aggregate.
+     * @param columns   The columns to read.
+     * @param supplier  Creates an empty partial aggregate.
+     * @param visitor   Folds a block into a partial aggregate.
+     * @param combiner  Merges two partial aggregates.
+     * @return The aggregate of the whole file.
+     * @throws UncheckedIOException     if a block cannot be read.
+     * @throws IllegalArgumentException if a column does not exist or a block is corrupt.
+     */
+    public <A> A aggregate(int[] columns, Supplier<A> supplier, BlockVisitor<A> visitor, BinaryOperator<A> combiner) {
+        for (int column : columns) {
+            if (column < 0 || column >= columnCount) {
+                throw new IllegalArgumentException("No column " + column);
+            }
+        }
+        return IntStream.range(0, offsets.size()).parallel().mapToObj(block -> {
+            var aggregate = supplier.get();
+            visitor.visit(aggregate, rows.get(block), decode(block, columns));
+            return aggregate;
+        }).reduce(combiner).orElseGet(supplier);
+    }
+
+    private long[][] decode(int block, int[] wanted) {
+        var blockLengths = lengths.get(block);
+        int blockRows = rows.get(block);
+        long start = offsets.get(block) + 4 + 8L * columnCount;
+        long end = start;
+        for (int column = 0; column < columnCount; column++) {
+            end += blockLengths[2 * column + 1];
+        }
+        ByteBuffer mapped;
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var values = new long[columnCount][];
+        var inflater = new Inflater();
+        try {
+            for (int column : wanted) {
+                int position = 0;
+                for (int before = 0; before < column; before++) {
+                    position += blockLengths[2 * before + 1];
+                }
+                inflater.reset();
+                inflater.setInput(mapped.duplicate().position(position).limit(position + blockLengths[2 * column + 1]));
+                var raw = new byte[blockLengths[2 * column]];
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    int read = inflater.inflate(raw, length, raw.length - length);
+                    if (read == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    length += read;
+                }
+                if (length != raw.length) {
+                    throw new IllegalArgumentException("Corrupt column in block " + block);
+                }
+                values[column] = decodeDeltas(raw, blockRows);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt column in block " + block, e);
+        } finally {
+            inflater.end();
+        }
+        return values;
+    }
+
+    // Reads the zigzag varint deltas written by ResultStore.
+    private static long[] decodeDeltas(byte[] raw, int count) {
+        var values = new long[count];
+        int position = 0;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = raw[position++];
+                zigzag |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    /**
+     * Returns the share of games won by player 0, counting ties as half.
+     *
+     * @return The win rate of the first player, or NaN for an empty file.
+     */
+    public double firstPlayerWinRate() {
+        var points = aggregate(new int[]{ResultStore.SCORE0, ResultStore.SCORE1}, () -> new long[1],
+                (sum, count, columns) -> {
+                    for (int i = 0; i < count; i++) {
+                        long diff = columns[ResultStore.SCORE0][i] - columns[ResultStore.SCORE1][i];
+                        sum[0] += diff > 0 ? 2 : diff == 0 ? 1 : 0;
+                    }
+                }, (a, b) -> new long[]{a[0] + b[0]});
+        return points[0] / (2.0 * size);
+    }
+
+    /**
+     * Returns the average number of turns of a game.
+     *
+     * @return The average turns, or NaN for an empty file.
+     */
+    public double averageTurns() {
+        var total = aggregate(new int[]{ResultStore.TURNS}, () -> new long[1], (sum, count, columns) -> {
+            for (int i = 0; i < count; i++) {
+                sum[0] += columns[ResultStore.TURNS][i];
+            }
+        }, (a, b) -> new long[]{a[0] + b[0]});
+        return (double) total[0] / size;
+    }
+
+    /**
+     * Returns the share of its games each agent won, counting ties as half.
+     *
+     * @return The win rates by agent name, in the order agents were first seen.
+     */
+    public Map<String, Double> winRateByAgent() {
+        int n = agents.size();
+        var totals = aggregate(new int[]{ResultStore.AGENT0, ResultStore.AGENT1, ResultStore.SCORE0,
+                ResultStore.SCORE1}, () -> new long[2 * n], (sum, count, columns) -> {
+                    for (int i = 0; i < count; i++) {
+                        int a = (int) columns[ResultStore.AGENT0][i];
+                        int b = (int) columns[ResultStore.AGENT1][i];
+                        long diff = columns[ResultStore.SCORE0][i] - columns[ResultStore.SCORE1][i];
+                        sum[2 * a] += diff > 0 ? 2 : diff == 0 ? 1 : 0;
+                        sum[2 * b] += diff < 0 ? 2 : diff == 0 ? 1 : 0;
+                        sum[2 * a + 1]++;
+                        sum[2 * b + 1]++;
+                    }
+                }, (a, b) -> {
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] += b[i];
+                    }
+                    return a;
+                });
+        var rates = new LinkedHashMap<String, Double>();
+        for (int agent = 0; agent < n; agent++) {
+            rates.put(agents.get(agent), totals[2 * agent] / (2.0 * totals[2 * agent + 1]));
+        }
+        return rates;
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,239 @@
+package patchwork;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * A sink writing game results to a columnar file, for statistics over very
+ * large numbers of games. Rows are gathered into blocks; inside a block each
+ * field is stored as its own column, delta and variable-length encoded, then
+ * deflated, so that a scan reading a few fields can skip the bytes of all the
+ * others. Agent names are replaced by numbers, listed once at the end of the
+ * file.
+ * <p>
+ * File layout: a 16 byte header (magic, version, column count, rows per
+ * block); blocks made of their row count, the raw and compressed length of
+ * each column, and the compressed columns; a row count of 0; the agent names.
+ * Files are read by {@link ResultAggregator}.
+ */
+public final class ResultStore implements AutoCloseable {
+    /**
+     * Column of the seed of the deal.
+     */
+    public static final int SEED = 0;
+    /**
+     * Column of the number of player 0.
+     */
+    public static final int AGENT0 = 1;
+    /**
+     * Column of the number of player 1.
+     */
+    public static final int AGENT1 = 2;
+    /**
+     * Column of the final buttons of player 0.
+     */
+    public static final int BUTTONS0 = 3;
+    /**
+     * Column of the final buttons of player 1.
+     */
+    public static final int BUTTONS1 = 4;
+    /**
+     * Column of the empty squares of player 0.
+     */
+    public static final int EMPTY0 = 5;
+    /**
+     * Column of the empty squares of player 1.
+     */
+    public static final int EMPTY1 = 6;
+    /**
+     * Column of the final score of player 0.
+     */
+    public static final int SCORE0 = 7;
+    /**
+     * Column of the final score of player 1.
+     */
+    public static final int SCORE1 = 8;
+    /**
+     * Column of the number of turns.
+     */
+    public static final int TURNS = 9;
+    /**
+     * Column of the duration in microseconds.
+     */
+    public static final int DURATION = 10;
+    /**
+     * The number of columns.
+     */
+    public static final int COLUMN_COUNT = 11;
+
+    static final int MAGIC = 0x50575253; // "PWRS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16; // Magic, version, column count, rows per block.
+
+    private final DataOutputStream output; // The file being written.
+    private final int blockRows; // Rows per block.
+    private final long[][] columns; // The rows of the current block, by column.
+    private final Map<String, Integer> agents = new HashMap<>(); // Agent numbers by name.
+    private final List<String> names = new ArrayList<>(); // Agent names by number.
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED); // Compresses the columns.
+    private byte[] raw = new byte[0]; // Encoded column before compression.
+    private byte[] compressed = new byte[0]; // Compressed column.
+    private int rows; // Rows of the current block.
+    private long size; // Rows written.
+
+    private ResultStore(DataOutputStream output, int blockRows) {
+        this.output = output;
+        this.blockRows = blockRows;
+        this.columns = new long[COLUMN_COUNT][blockRows];
+    }
+
+    /**
+     * Creates a result file, replacing it if it exists.
+     *
+     * @param file      The file.
+     * @param blockRows The number of rows per block.
+     * @return The sink.
+     * @throws IOException              if the file cannot be created.
+     * @throws IllegalArgumentException if the number of rows per block is less than 1.
+     */
+    public static ResultStore create(Path file, int blockRows) throws IOException {
+        if (blockRows < 1) {
+            throw new IllegalArgumentException("Blocks need at least one row");
+        }
+        var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(COLUMN_COUNT);
+            output.writeInt(blockRows);
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+        return new ResultStore(output, blockRows);
+    }
+
+    /**
+     * Appends the row of a result.
+     *
+     * @param result The result.
+     * @throws IOException if a full block cannot be written.
+     */
+    public void append(GameResult result) throws IOException {
+        columns[SEED][rows] = result.getSeed();
+        columns[AGENT0][rows] = agent(result.getAgent(0));
+        columns[AGENT1][rows] = agent(result.getAgent(1));
+        columns[BUTTONS0][rows] = result.getButtons(0);
+        columns[BUTTONS1][rows] = result.getButtons(1);
+        columns[EMPTY0][rows] = result.getEmptySquares(0);
+        columns[EMPTY1][rows] = result.getEmptySquares(1);
+        columns[SCORE0][rows] = result.getScore(0);
+        columns[SCORE1][rows] = result.getScore(1);
+        columns[TURNS][rows] = result.getTurns();
+        columns[DURATION][rows] = result.getDurationNanos() / 1000;
+        size++;
+        if (++rows == blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Returns the number of rows appended.
+     *
+     * @return The row count.
+     */
+    public long size() {
+        return size;
+    }
+
+    private int agent(String name) {
+        return agents.computeIfAbsent(name, key -> {
+            names.add(key);
+            return names.size() - 1;
+        });
+    }
+
+    private void writeBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        var lengths = new int[COLUMN_COUNT * 2];
+        var payloads = new byte[COLUMN_COUNT][];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            int rawLength = encode(columns[column], rows);
+            deflater.reset();
+            deflater.setInput(raw, 0, rawLength);
+            deflater.finish();
+            if (compressed.length < rawLength + 64) {
+                compressed = new byte[rawLength + 64];
+            }
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            lengths[2 * column] = rawLength;
+            lengths[2 * column + 1] = length;
+            payloads[column] = Arrays.copyOf(compressed, length);
+        }
+        output.writeInt(rows);
+        for (int length : lengths) {
+            output.writeInt(length);
+        }
+        for (var payload : payloads) {
+            output.write(payload);
+        }
+        rows = 0;
+    }
+
+    // Writes the zigzag varints of the differences between successive values into raw.
+    private int encode(long[] values, int count) {
+        if (raw.length < count * 10) {
+            raw = new byte[count * 10];
+        }
+        int length = 0;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = values[i] - previous;
+            previous = values[i];
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7fL) != 0) {
+                raw[length++] = (byte) (zigzag | 0x80);
+                zigzag >>>= 7;
+            }
+            raw[length++] = (byte) zigzag;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the last block and the agent names, and closes the file.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+            output.writeInt(0);
+            output.writeInt(names.size());
+            for (var name : names) {
+                output.writeUTF(name);
+            }
+        } finally {
+            deflater.end();
+            output.close();
+        }
+    }
+}
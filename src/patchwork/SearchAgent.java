@@ -0,0 +1,296 @@
+package patchwork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deterministic agent running a time-budgeted iterative-deepening alpha-beta
+ * search over every legal move: advancing, or buying one of the offered
+ * patches in any orientation and position.
+ * <p>
+ * Each iteration searches one ply deeper, starting with the principal
+ * variation of the previous one; other moves are ordered by two killer moves
+ * per ply and a history table of the moves that caused cutoffs. The wall clock
+ * is read every 64 nodes and the search stops as soon as the budget is
+ * spent or the thread is interrupted, answering with the best move of the last
+ * completed iteration; the first iteration always completes. Leaves are scored
+ * by an estimate of the final margin, and positions close to the end are
+ * handed to an {@link EndgameSolver} when one is given, within the budget of
+ * the move: if it cannot prove the position before the budget is spent, its
+ * best move so far is played. Positions found in an {@link OpeningBook}, when one is given,
+ * are answered with the book move without searching.
+ * <p>
+ * The turn does not always pass to the opponent, so values are negated only
+ * when the player to move changes.
+ */
+public final class SearchAgent implements Agent {
+    private static final int EXACT = 0; // The stored value is exact.
+    private static final int LOWER = 1; // The stored value is a lower bound.
+    private static final int UPPER = 2; // The stored value is an upper bound.
+    private static final int CLOCK_MASK = 63; // The clock is read every 64 nodes.
+    private static final int INFINITY = 1_000_000; // Larger than any margin.
+
+    private final long budgetNanos; // Time budget of one move.
+    private final int maxDepth; // Deepest iteration.
+    private final EndgameSolver endgame; // Solves positions near the end, or null.
+    private final OpeningBook book; // Moves of known openings, or null.
+    private final Map<Long, Entry> table = new HashMap<>(); // Transposition table of the current move.
+    private int[] killers = new int[2 * 16]; // Two killer moves per ply, packed.
+    private int[] history = new int[0]; // Cutoff score of each placement, by history index.
+    private long deadline; // Deadline of the current move, from System.nanoTime().
+    private long nodes; // Nodes visited for the current move.
+    private int lastDepth; // Depth of the last completed iteration.
+
+    private static final class Entry {
+        private final int depth;
+        private final int value;
+        private final int flag;
+        private final int bestMove;
+
+        private Entry(int depth, int value, int flag, int bestMove) {
+            this.depth = depth;
+            this.value = value;
+            this.flag = flag;
+            this.bestMove = bestMove;
+        }
+    }
+
+    private static final class OutOfTime extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private OutOfTime() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Creates a search agent.
+     *
+     * @param budgetMillis The wall-clock budget of one move, in milliseconds.
+     * @param maxDepth     The deepest iteration, in plies.
+     * @param endgame      The solver of positions near the end, or null to search them like the others.
+     * @throws IllegalArgumentException if the budget is negative or the depth less than 1.
+     */
+    public SearchAgent(long budgetMillis, int maxDepth, EndgameSolver endgame) {
+        this(budgetMillis, maxDepth, endgame, null);
+    }
+
+    /**
+     * Creates a search agent that plays book moves in known openings.
+     *
+     * @param budgetMillis The wall-clock budget of one move, in milliseconds.
+     * @param maxDepth     The deepest iteration, in plies.
+     * @param endgame      The solver of positions near the end, or null to search them like the others.
+     * @param book         The opening book probed before searching, or null.
+     * @throws IllegalArgumentException if the budget is negative or the depth less than 1.
+     */
+    public SearchAgent(long budgetMillis, int maxDepth, EndgameSolver endgame, OpeningBook book) {
+        if (budgetMillis < 0 || maxDepth < 1) {
+            throw new IllegalArgumentException("Invalid budget or depth");
+        }
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.maxDepth = maxDepth;
+        this.endgame = endgame;
+        this.book = book;
+    }
+
+    @Override
+    public Move chooseMove(GameState state) {
+        if (state.isFinished()) {
+            throw new IllegalStateException("The game is over");
+        }
+        nodes = 0;
+        lastDepth = 0;
+        if (book != null) {
+            var move = book.lookup(state);
+            if (move != null) {
+                return move;
+            }
+        }
+        deadline = System.nanoTime() + budgetNanos;
+        table.clear();
+        Arrays.fill(killers, 0);
+        int historySize = state.getCatalog().size() * 4 * 81 + 1;
+        if (history.length != historySize) {
+            history = new int[historySize];
+        } else {
+            for (int i = 0; i < history.length; i++) {
+                history[i] >>= 2;
+            }
+        }
+        if (endgame != null && endgame.applies(state)) {
+            var result = endgame.solve(state, deadline);
+            if (result.isProven()
+                    || result.getBestMove() != null && System.nanoTime() - deadline >= 0) {
+                return result.getBestMove();
+            }
+        }
+        var legal = state.legalMoves();
+        var best = legal.get(0);
+        try {
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                search(state, depth, 0, -INFINITY, INFINITY);
+                var entry = table.get(state.hash());
+                if (entry != null) {
+                    best = Move.decode(entry.bestMove);
+                }
+                lastDepth = depth;
+            }
+        } catch (OutOfTime e) {
+            // Keep the move of the last completed iteration.
+        }
+        return best;
+    }
+
+    /**
+     * Returns the depth of the last completed iteration of the last move.
+     *
+     * @return The depth in plies, or 0 if not even one ply was completed.
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Returns the number of positions visited for the last move.
+     *
+     * @return The node count.
+     */
+    public long getLastNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the principal variation of the last move, as far as the
+     * transposition table still holds it.
+     *
+     * @param state The state the last move was chosen in; it is not modified.
+     * @return The expected moves, starting with the chosen one.
+     */
+    public List<Move> getPrincipalVariation(GameState state) {
+        var variation = new ArrayList<Move>();
+        var current = state.copy();
+        while (variation.size() < lastDepth && !current.isFinished()) {
+            var entry = table.get(current.hash());
+            if (entry == null) {
+                break;
+            }
+            var move = Move.decode(entry.bestMove);
+            variation.add(move);
+            current.apply(move);
+        }
+        return variation;
+    }
+
+    // Returns the value of the state for the player to move.
+    private int search(GameState state, int depth, int ply, int alpha, int beta) {
+        int mover = state.getCurrentPlayer();
+        if (state.isFinished()) {
+            return mover == 0 ? state.getScoreMargin() : -state.getScoreMargin();
+        }
+        if ((++nodes & CLOCK_MASK) == 0 && lastDepth > 0
+                && (System.nanoTime() > deadline || Thread.currentThread().isInterrupted())) {
+            throw new OutOfTime();
+        }
+        if (depth == 0) {
+            return evaluate(state, mover);
+        }
+        long key = state.hash();
+        var entry = table.get(key);
+        int hashMove = -1;
+        if (entry != null) {
+            if (entry.depth >= depth && (entry.flag == EXACT
+                    || entry.flag == LOWER && entry.value >= beta
+                    || entry.flag == UPPER && entry.value <= alpha)) {
+                return entry.value;
+            }
+            hashMove = entry.bestMove;
+        }
+
+        var moves = state.legalMoves();
+        var order = order(moves, hashMove, ply);
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = moves.get((int) order[0]).encode();
+        for (long packed : order) {
+            var move = moves.get((int) packed);
+            var child = state.copy();
+            child.apply(move);
+            int value = child.getCurrentPlayer() == mover
+                    ? search(child, depth - 1, ply + 1, alpha, beta)
+                    : -search(child, depth - 1, ply + 1, -beta, -alpha);
+            if (value > best) {
+                best = value;
+                bestMove = move.encode();
+            }
+            alpha = Math.max(alpha, value);
+            if (alpha >= beta) {
+                recordCutoff(move, depth, ply);
+                break;
+            }
+        }
+        int flag = best <= originalAlpha ? UPPER : best >= beta ? LOWER : EXACT;
+        table.put(key, new Entry(depth, best, flag, bestMove));
+        return best;
+    }
+
+    // Sorts the move indexes: hash move, killers, then history; each long packs a score above an index.
+    private long[] order(List<Move> moves, int hashMove, int ply) {
+        int killer1 = ply < killers.length / 2 ? killers[2 * ply] : 0;
+        int killer2 = ply < killers.length / 2 ? killers[2 * ply + 1] : 0;
+        var order = new long[moves.size()];
+        for (int i = 0; i < order.length; i++) {
+            var move = moves.get(i);
+            int code = move.encode();
+            long score;
+            if (code == hashMove) {
+                score = 3L << 40;
+            } else if (code == killer1 && code != 0) {
+                score = 2L << 40;
+            } else if (code == killer2 && code != 0) {
+                score = 1L << 40;
+            } else {
+                score = history[historyIndex(move)];
+            }
+            order[i] = -(score << 16 | (0xffff - i));
+        }
+        Arrays.sort(order);
+        for (int i = 0; i < order.length; i++) {
+            order[i] = 0xffff - (-order[i] & 0xffff);
+        }
+        return order;
+    }
+
+    private void recordCutoff(Move move, int depth, int ply) {
+        int code = move.encode();
+        if (ply >= killers.length / 2) {
+            killers = Arrays.copyOf(killers, 2 * (ply + 1) * 2);
+        }
+        if (code != killers[2 * ply]) {
+            killers[2 * ply + 1] = killers[2 * ply];
+            killers[2 * ply] = code;
+        }
+        int index = historyIndex(move);
+        history[index] = Math.min(history[index] + depth * depth, 1 << 24);
+    }
+
+    // The advance shares the last slot; a purchase is indexed by patch, orientation and square.
+    private int historyIndex(Move move) {
+        if (move.isAdvance()) {
+            return history.length - 1;
+        }
+        return (move.getPatchId() * 4 + move.getOrientation()) * 81 + move.getRow() * 9 + move.getCol();
+    }
+
+    // Estimates the final margin for a player: score plus the income of the paydays still ahead.
+    private static int evaluate(GameState state, int player) {
+        return estimate(state, player) - estimate(state, 1 - player);
+    }
+
+    private static int estimate(GameState state, int player) {
+        return state.getScore(player) + state.getIncome(player) * state.getRemainingPaydays(player);
+    }
+}
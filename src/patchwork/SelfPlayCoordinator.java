@@ -0,0 +1,342 @@
+package patchwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Shards self-play over worker processes. The coordinator splits a run of
+ * seeds into ranges and hands them out over local sockets to
+ * {@link SelfPlayWorker}s, which stream the results back in batches. Results
+ * are buffered per range and only appended to the {@link ResultStore} once the
+ * worker reports the range complete, so every seed is stored exactly once.
+ * <p>
+ * A worker that disconnects, sends garbage or stays silent longer than its
+ * lease loses its range: the partial results are dropped and the range goes
+ * back to the front of the queue for the next worker asking for work. Long
+ * runs therefore survive crashed or hung workers, and workers may join at any
+ * time, from other processes or machines.
+ */
+public final class SelfPlayCoordinator implements AutoCloseable {
+    static final int MAGIC = 0x50575350; // "PWSP", sent by workers first.
+    static final int VERSION = 1; // Protocol version.
+    static final byte STOP = 0; // Coordinator to worker: no work left.
+    static final byte RANGE = 1; // Coordinator to worker: first seed, count and track length.
+    static final byte RESULTS = 1; // Worker to coordinator: a batch of results.
+    static final byte DONE = 2; // Worker to coordinator: the current range is complete.
+
+    private final ResultStore store; // Receives the results of completed ranges.
+    private final long endSeed; // Seed after the last seed of the run.
+    private final int rangeSize; // Seeds per range.
+    private final int trackLength; // The number of positions of the time track.
+    private final int leaseMillis; // Longest silence of a worker holding a range.
+    private final ServerSocket server; // Accepts workers on the loopback interface.
+    private final Object lock = new Object(); // Guards the scheduling fields and the store.
+    private final ArrayDeque<long[]> reissued = new ArrayDeque<>(); // Ranges lost by workers, to hand out first.
+    private final long totalRanges; // Number of ranges of the run.
+    private long nextSeed; // First seed of the next fresh range.
+    private long completedRanges; // Ranges stored.
+    private long reissueCount; // Ranges lost by workers so far.
+    private int inFlight; // Ranges held by workers.
+    private IOException failure; // Error of the store, ending the run.
+
+    /**
+     * Creates a coordinator listening on the loopback interface.
+     *
+     * @param store       Receives the results of the run.
+     * @param firstSeed   The first seed of the run.
+     * @param games       The number of games of the run.
+     * @param rangeSize   The number of seeds handed out at once.
+     * @param trackLength The number of positions of the time track.
+     * @param leaseMillis The longest a worker holding a range may stay silent, in milliseconds.
+     * @param port        The port to listen on, or 0 for any free port.
+     * @throws IOException              if the port cannot be opened.
+     * @throws IllegalArgumentException if a count or the lease is not positive.
+     */
+    public SelfPlayCoordinator(ResultStore store, long firstSeed, long games, int rangeSize, int trackLength,
+            int leaseMillis, int port) throws IOException {
+        this.store = Objects.requireNonNull(store, "Store cannot be null");
+        if (games < 1 || rangeSize < 1 || trackLength < 1 || leaseMillis < 1) {
+            throw new IllegalArgumentException("Games, range size, track length and lease must be positive");
+        }
+        this.nextSeed = firstSeed;
+        this.endSeed = firstSeed + games;
+        this.rangeSize = rangeSize;
+        this.trackLength = trackLength;
+        this.leaseMillis = leaseMillis;
+        this.totalRanges = (games + rangeSize - 1) / rangeSize;
+        this.server = new ServerSocket(port, 64, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port workers connect to.
+     *
+     * @return The local port.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Starts accepting workers on a background thread.
+     */
+    public void start() {
+        var acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    var socket = server.accept();
+                    var handler = new Thread(() -> serve(socket), "self-play-coordinator-" + socket.getPort());
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    // The server socket was closed.
+                }
+            }
+        }, "self-play-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Waits until every range of the run is stored, or for at most the given
+     * time.
+     *
+     * @param timeoutMillis The longest wait, in milliseconds.
+     * @return True if the run is complete.
+     * @throws IOException          if the store failed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean await(long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        synchronized (lock) {
+            long left;
+            while (completedRanges < totalRanges && failure == null
+                    && (left = deadline - System.nanoTime()) > 0) {
+                lock.wait(Math.max(1, left / 1_000_000L));
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return completedRanges == totalRanges;
+        }
+    }
+
+    /**
+     * Returns true once every range of the run is stored.
+     *
+     * @return True if the run is complete.
+     */
+    public boolean isDone() {
+        synchronized (lock) {
+            return completedRanges == totalRanges;
+        }
+    }
+
+    /**
+     * Returns the number of ranges taken back from workers that were lost.
+     *
+     * @return The reissued range count.
+     */
+    public long getReissued() {
+        synchronized (lock) {
+            return reissueCount;
+        }
+    }
+
+    /**
+     * Stops accepting new workers.
+     *
+     * @throws IOException if the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    // Serves one worker until the run is over or the worker is lost.
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(leaseMillis);
+            socket.setTcpNoDelay(true);
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a self-play worker");
+            }
+            String agent = in.readUTF();
+            long[] range;
+            while ((range = take()) != null) {
+                try {
+                    out.writeByte(RANGE);
+                    out.writeLong(range[0]);
+                    out.writeInt((int) range[1]);
+                    out.writeInt(trackLength);
+                    out.flush();
+                    commit(receive(in, range, agent));
+                } catch (IOException | RuntimeException e) {
+                    giveBack(range);
+                    throw e;
+                }
+            }
+            out.writeByte(STOP);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            // The worker is lost; its range, if any, was given back.
+        }
+    }
+
+    // Reads the results of a range up to its completion message.
+    private List<GameResult> receive(DataInputStream in, long[] range, String agent) throws IOException {
+        var results = new ArrayList<GameResult>((int) range[1]);
+        while (true) {
+            byte type = in.readByte();
+            if (type == DONE) {
+                if (results.size() != range[1]) {
+                    throw new IOException("Range completed with " + results.size() + " of " + range[1] + " games");
+                }
+                return results;
+            }
+            if (type != RESULTS) {
+                throw new IOException("Unknown message " + type);
+            }
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                long seed = in.readLong();
+                int buttons0 = in.readShort();
+                int buttons1 = in.readShort();
+                int empty0 = in.readUnsignedByte();
+                int empty1 = in.readUnsignedByte();
+                int turns = in.readUnsignedShort();
+                long durationNanos = in.readInt() * 1000L;
+                if (seed != range[0] + results.size()) {
+                    throw new IOException("Unexpected seed " + seed);
+                }
+                results.add(GameResult.of(agent, agent, buttons0, buttons1, empty0, empty1,
+                        buttons0 - 2 * empty0, buttons1 - 2 * empty1).withPlay(seed, turns, durationNanos));
+            }
+        }
+    }
+
+    // Hands out a lost range, else a fresh one; waits while only other workers' ranges are left.
+    private long[] take() {
+        synchronized (lock) {
+            while (reissued.isEmpty() && nextSeed == endSeed && inFlight > 0 && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            if (failure != null) {
+                return null;
+            }
+            long[] range = reissued.pollFirst();
+            if (range == null && nextSeed < endSeed) {
+                range = new long[] {nextSeed, Math.min(rangeSize, endSeed - nextSeed)};
+                nextSeed += range[1];
+            }
+            if (range != null) {
+                inFlight++;
+            }
+            return range;
+        }
+    }
+
+    private void giveBack(long[] range) {
+        synchronized (lock) {
+            reissued.addFirst(range);
+            reissueCount++;
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+
+    private void commit(List<GameResult> results) {
+        synchronized (lock) {
+            try {
+                for (var result : results) {
+                    store.append(result);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            inFlight--;
+            completedRanges++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Runs a sharded self-play session on this machine: starts the given number
+     * of worker JVMs on the same class path, restarting those that die while
+     * work is left, and stores every result in a new result file. Workers on
+     * other processes may join on the printed port.
+     *
+     * @param args The result file and the number of games, then optionally the number of workers, the range
+     *             size and the track length.
+     * @throws Exception if the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: SelfPlayCoordinator <results> <games> [workers] [rangeSize] [trackLength]");
+            return;
+        }
+        long games = Long.parseLong(args[1]);
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int rangeSize = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int trackLength = args.length > 4 ? Integer.parseInt(args[4]) : 54;
+        long start = System.nanoTime();
+        try (var store = ResultStore.create(Paths.get(args[0]), 4096);
+                var coordinator = new SelfPlayCoordinator(store, 0, games, rangeSize, trackLength, 30_000, 0)) {
+            coordinator.start();
+            System.out.println("Coordinating " + games + " games on port " + coordinator.getPort());
+            var processes = new ArrayList<Process>();
+            int restarts = 0;
+            for (int i = 0; i < workers; i++) {
+                processes.add(launchWorker(coordinator.getPort()));
+            }
+            try {
+                while (!coordinator.await(200)) {
+                    boolean alive = false;
+                    for (int i = 0; i < processes.size(); i++) {
+                        if (!processes.get(i).isAlive() && restarts < 4 * workers) {
+                            processes.set(i, launchWorker(coordinator.getPort()));
+                            restarts++;
+                        }
+                        alive |= processes.get(i).isAlive();
+                    }
+                    if (!alive) {
+                        throw new IllegalStateException("Every worker died; giving up after " + restarts + " restarts");
+                    }
+                }
+            } finally {
+                for (var process : processes) {
+                    process.destroyForcibly();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d games in %.1f s (%.0f per second), %d ranges reissued, %d worker restarts%n",
+                    store.size(), seconds, store.size() / seconds, coordinator.getReissued(), restarts);
+        }
+    }
+
+    private static Process launchWorker(int port) throws IOException {
+        var java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), SelfPlayWorker.class.getName(),
+                "127.0.0.1", Integer.toString(port))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+}
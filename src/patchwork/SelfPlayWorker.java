@@ -0,0 +1,171 @@
+package patchwork;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Plays the seed ranges handed out by a {@link SelfPlayCoordinator}. A worker
+ * connects to the coordinator, announces the name of its agent, then plays
+ * every seed of each range it receives as a headless self-play game and
+ * streams the results back in batches, ending each range with a completion
+ * message. It stops when the coordinator has no work left or the connection
+ * is lost.
+ * <p>
+ * Each batch also renews the worker's lease: a coordinator that hears nothing
+ * for too long gives the range to another worker.
+ */
+public final class SelfPlayWorker {
+    static final int BATCH_GAMES = 64; // Games per result message.
+
+    private final PatchCatalog catalog; // The patches of the games.
+    private final String agentName; // The name of the agent, as recorded in the results.
+    private final Supplier<Agent> agents; // Creates the agents of a connection.
+
+    /**
+     * Creates a worker.
+     *
+     * @param catalog   The patches of the games.
+     * @param agentName The name of the agent, as recorded in the results.
+     * @param agents    Creates the agent of each seat; both seats play the same kind of agent.
+     */
+    public SelfPlayWorker(PatchCatalog catalog, String agentName, Supplier<Agent> agents) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        this.agentName = Objects.requireNonNull(agentName, "Agent name cannot be null");
+        this.agents = Objects.requireNonNull(agents, "Agent factory cannot be null");
+    }
+
+    /**
+     * Connects to a coordinator and plays the ranges it hands out until it
+     * stops the worker.
+     *
+     * @param host The host of the coordinator.
+     * @param port The port of the coordinator.
+     * @return The number of games played.
+     * @throws IOException if the connection fails or is lost before the coordinator stops the worker.
+     */
+    public long run(String host, int port) throws IOException {
+        long played = 0;
+        try (var socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(SelfPlayCoordinator.MAGIC);
+            out.writeInt(SelfPlayCoordinator.VERSION);
+            out.writeUTF(agentName);
+            out.flush();
+            Agent first = agents.get();
+            Agent second = agents.get();
+            GamePool<GameState> pool = null;
+            int poolTrack = -1;
+            var batch = new ArrayList<GameResult>(BATCH_GAMES);
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("The coordinator closed the connection", e);
+                }
+                if (type == SelfPlayCoordinator.STOP) {
+                    return played;
+                }
+                if (type != SelfPlayCoordinator.RANGE) {
+                    throw new IOException("Unknown message " + type);
+                }
+                long firstSeed = in.readLong();
+                int count = in.readInt();
+                int trackLength = in.readInt();
+                if (trackLength != poolTrack) {
+                    pool = GamePool.ofStates(catalog, trackLength);
+                    poolTrack = trackLength;
+                }
+                for (int i = 0; i < count; i++) {
+                    batch.add(play(pool, firstSeed + i, first, second));
+                    played++;
+                    if (batch.size() == BATCH_GAMES || i == count - 1) {
+                        writeBatch(out, batch);
+                        batch.clear();
+                    }
+                }
+                out.writeByte(SelfPlayCoordinator.DONE);
+                out.flush();
+            }
+        }
+    }
+
+    private GameResult play(GamePool<GameState> pool, long seed, Agent first, Agent second) {
+        long start = System.nanoTime();
+        var state = pool.acquire(seed);
+        int turns = 0;
+        while (!state.isFinished()) {
+            state.apply((state.getCurrentPlayer() == 0 ? first : second).chooseMove(state));
+            turns++;
+        }
+        var result = GameResult.of(state, agentName, agentName).withPlay(seed, turns, System.nanoTime() - start);
+        pool.release(state);
+        return result;
+    }
+
+    private static void writeBatch(DataOutputStream out, ArrayList<GameResult> batch) throws IOException {
+        out.writeByte(SelfPlayCoordinator.RESULTS);
+        out.writeShort(batch.size());
+        for (var result : batch) {
+            out.writeLong(result.getSeed());
+            out.writeShort(result.getButtons(0));
+            out.writeShort(result.getButtons(1));
+            out.writeByte(result.getEmptySquares(0));
+            out.writeByte(result.getEmptySquares(1));
+            out.writeShort(result.getTurns());
+            out.writeInt((int) Math.min(Integer.MAX_VALUE, result.getDurationNanos() / 1000));
+        }
+        out.flush();
+    }
+
+    /**
+     * Runs workers against a coordinator, one connection per thread. Without
+     * weights, both seats are played by {@link GreedyAgent}s; with a weights
+     * file, by {@link LinearAgent}s.
+     *
+     * @param args The host and port of the coordinator, then optionally the number of threads and a weights file.
+     * @throws Exception if a worker fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: SelfPlayWorker <host> <port> [threads] [weights]");
+            return;
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        var catalog = PatchCatalog.load(Paths.get("data/dataPatch.data"));
+        SelfPlayWorker worker;
+        if (args.length > 3) {
+            var weights = LinearEvaluator.load(Paths.get(args[3]));
+            worker = new SelfPlayWorker(catalog, "linear", () -> new LinearAgent(weights));
+        } else {
+            worker = new SelfPlayWorker(catalog, "greedy", GreedyAgent::new);
+        }
+        var workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    worker.run(host, port);
+                } catch (IOException e) {
+                    System.err.println("Worker stopped: " + e.getMessage());
+                }
+            }, "self-play-" + i);
+            workers[i].start();
+        }
+        for (var thread : workers) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package patchwork;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans the turns of a live headless game out to any number of spectators.
+ * Each turn is encoded once as a small delta frame against the previous turn:
+ * the squares each player covered, their button, position and income changes,
+ * the last mover, the market cursor, the leather patches taken and the market
+ * index removed. The same frame array is then offered to the queue of every
+ * subscriber, so a spectator costs one queue insertion per turn.
+ * <p>
+ * A subscriber whose queue is full is dropped to keyframes: its stale frames
+ * are discarded and it receives nothing until the next periodic keyframe, a
+ * full packed state, after which it follows the deltas again. A keyframe
+ * that finds a queue full replaces its contents. Keyframes are only encoded
+ * when a subscriber needs one. Spectators rebuild the game with a
+ * {@link View}.
+ */
+public final class SpectatorChannel {
+    /**
+     * Frame type of a delta.
+     */
+    public static final byte DELTA = 1;
+    /**
+     * Frame type of a keyframe.
+     */
+    public static final byte KEYFRAME = 2;
+
+    private static final int DELTA_BYTES = 41; // Type, sequence, 16 bytes per player, mover, cursor, leather, removed.
+    private static final int NO_REMOVAL = 0xff; // Removed index of a turn that left the market unchanged.
+
+    private final PatchCatalog catalog; // The patches of the game.
+    private final int keyframeInterval; // Turns between keyframes for lagging subscribers.
+    private final List<Subscription> subscribers = new CopyOnWriteArrayList<>(); // Current subscribers.
+    private final ByteBuffer previous; // Packed state of the last turn.
+    private final ByteBuffer current; // Packed state of the turn being published.
+    private boolean started; // True once a state was published.
+    private int sequence; // Sequence number of the last frame.
+
+    /**
+     * Creates a channel.
+     *
+     * @param catalog          The patches of the published game.
+     * @param keyframeInterval The number of turns between keyframes for subscribers that fell behind.
+     * @throws IllegalArgumentException if the interval is less than 1.
+     */
+    public SpectatorChannel(PatchCatalog catalog, int keyframeInterval) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.previous = ByteBuffer.allocate(GameState.packedSize(catalog.size()));
+        this.current = ByteBuffer.allocate(GameState.packedSize(catalog.size()));
+    }
+
+    /**
+     * Subscribes a spectator. Its first frame is a keyframe of the last
+     * published state, if any.
+     *
+     * @param capacity The number of frames the spectator may fall behind before it is dropped to keyframes.
+     * @return The subscription.
+     * @throws IllegalArgumentException if the capacity is less than 1.
+     */
+    public synchronized Subscription subscribe(int capacity) {
+        var subscription = new Subscription(capacity);
+        if (started) {
+            subscription.queue.add(keyframe(previous));
+        }
+        // The keyframe, or the first published state, brings it up to date, so it follows the deltas from now on.
+        subscription.lagging = false;
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Returns the number of subscribers.
+     *
+     * @return The subscriber count.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Publishes the state of the game after a turn. A state that is not one
+     * turn away from the previous one, such as a new deal, is sent to every
+     * subscriber as a keyframe.
+     *
+     * @param state The state; it is not modified.
+     * @throws IllegalArgumentException if the state belongs to another catalog.
+     */
+    public synchronized void publish(GameState state) {
+        if (state.getCatalog() != catalog) {
+            throw new IllegalArgumentException("State of another catalog");
+        }
+        state.writeTo(current, 0);
+        sequence++;
+        byte[] delta = started ? delta() : null;
+        byte[] keyframe = null;
+        if (delta == null || sequence % keyframeInterval == 0) {
+            for (var subscription : subscribers) {
+                if (delta == null || subscription.lagging) {
+                    keyframe = keyframe(current);
+                    break;
+                }
+            }
+        }
+        for (var subscription : subscribers) {
+            if (subscription.closed) {
+                subscribers.remove(subscription);
+            } else if (delta != null && !subscription.lagging) {
+                if (!subscription.queue.offer(delta)) {
+                    subscription.lagging = true;
+                    subscription.dropped += subscription.queue.size() + 1;
+                    subscription.queue.clear();
+                }
+            } else if (keyframe != null) {
+                // A keyframe supersedes everything still queued.
+                if (!subscription.queue.offer(keyframe)) {
+                    subscription.dropped += subscription.queue.size();
+                    subscription.queue.clear();
+                    subscription.queue.offer(keyframe);
+                }
+                subscription.lagging = false;
+            } else {
+                subscription.dropped++;
+            }
+        }
+        previous.clear();
+        previous.put(current.array(), 0, previous.capacity());
+        started = true;
+    }
+
+    // Encodes the turn from previous to current, or returns null if it is not a single turn.
+    private byte[] delta() {
+        int oldSize = previous.get(10) & 0xff;
+        int newSize = current.get(10) & 0xff;
+        int removed = NO_REMOVAL;
+        if (newSize == oldSize - 1) {
+            removed = newSize;
+            for (int i = 0; i < newSize; i++) {
+                if (previous.get(36 + i) != current.get(36 + i)) {
+                    removed = i;
+                    break;
+                }
+            }
+            for (int i = removed; i < newSize; i++) {
+                if (previous.get(37 + i) != current.get(36 + i)) {
+                    return null;
+                }
+            }
+        } else if (newSize != oldSize
+                || !Arrays.equals(previous.array(), 36, 36 + oldSize, current.array(), 36, 36 + newSize)) {
+            return null;
+        }
+        var frame = ByteBuffer.allocate(DELTA_BYTES);
+        frame.put(DELTA).putInt(sequence);
+        for (int p = 0; p < 2; p++) {
+            long placedLow = current.getLong(12 + 12 * p) ^ previous.getLong(12 + 12 * p);
+            int placedHigh = current.getInt(20 + 12 * p) ^ previous.getInt(20 + 12 * p);
+            if ((placedLow & previous.getLong(12 + 12 * p)) != 0 || (placedHigh & previous.getInt(20 + 12 * p)) != 0) {
+                return null;
+            }
+            frame.putShort((short) (current.getShort(2 * p) - previous.getShort(2 * p)));
+            frame.put((byte) (current.get(4 + p) - previous.get(4 + p)));
+            frame.put((byte) (current.get(6 + p) - previous.get(6 + p)));
+            frame.putLong(placedLow).putInt(placedHigh);
+        }
+        frame.put(current.get(8)).put(current.get(9)).put(current.get(11)).put((byte) removed);
+        return frame.array();
+    }
+
+    private byte[] keyframe(ByteBuffer state) {
+        int length = GameState.packedSize(state.get(10) & 0xff);
+        var frame = ByteBuffer.allocate(5 + length);
+        frame.put(KEYFRAME).putInt(sequence).put(state.array(), 0, length);
+        return frame.array();
+    }
+
+    /**
+     * The frames queued for one spectator.
+     */
+    public static final class Subscription implements AutoCloseable {
+        private final BlockingQueue<byte[]> queue; // Frames not yet taken.
+        private volatile boolean lagging = true; // True while waiting for a keyframe.
+        private volatile boolean closed; // True once the spectator left.
+        private volatile long dropped; // Frames discarded for this spectator.
+
+        private Subscription(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Capacity must be at least 1");
+            }
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Takes the next frame, waiting for up to the given time.
+         *
+         * @param timeout The longest wait.
+         * @param unit    The unit of the wait.
+         * @return The frame, or null if none came in time. The array is shared and must not be modified.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         */
+        public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        /**
+         * Returns true while the spectator waits for a keyframe after falling behind.
+         *
+         * @return True if the spectator is lagging.
+         */
+        public boolean isLagging() {
+            return lagging;
+        }
+
+        /**
+         * Returns the number of frames discarded because the spectator fell behind.
+         *
+         * @return The dropped frame count.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Leaves the channel; no more frames are queued.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    /**
+     * Rebuilds the published game from the frames of a subscription. Deltas
+     * are applied to a packed copy of the state; a frame out of sequence is
+     * ignored until the next keyframe.
+     */
+    public static final class View {
+        private final ByteBuffer packed; // The packed state seen so far.
+        private int sequence = -1; // Sequence of the last applied frame, -1 before a keyframe.
+
+        /**
+         * Creates a view of a game of a catalog.
+         *
+         * @param catalog The patches of the game.
+         */
+        public View(PatchCatalog catalog) {
+            this.packed = ByteBuffer.allocate(GameState.packedSize(catalog.size()));
+        }
+
+        /**
+         * Applies a frame.
+         *
+         * @param frame The frame.
+         * @return True if the frame was applied, false if it was skipped to wait for a keyframe.
+         * @throws IllegalArgumentException if the frame is malformed.
+         */
+        public boolean accept(byte[] frame) {
+            var buffer = ByteBuffer.wrap(frame);
+            byte type = buffer.get();
+            int frameSequence = buffer.getInt();
+            if (type == KEYFRAME) {
+                if (frame.length - 5 > packed.capacity()) {
+                    throw new IllegalArgumentException("Keyframe larger than the catalog allows");
+                }
+                packed.put(0, frame, 5, frame.length - 5);
+                sequence = frameSequence;
+                return true;
+            }
+            if (type != DELTA || frame.length != DELTA_BYTES) {
+                throw new IllegalArgumentException("Unknown frame");
+            }
+            if (sequence < 0 || frameSequence != sequence + 1) {
+                sequence = -1;
+                return false;
+            }
+            for (int p = 0; p < 2; p++) {
+                packed.putShort(2 * p, (short) (packed.getShort(2 * p) + buffer.getShort()));
+                packed.put(4 + p, (byte) (packed.get(4 + p) + buffer.get()));
+                packed.put(6 + p, (byte) (packed.get(6 + p) + buffer.get()));
+                packed.putLong(12 + 12 * p, packed.getLong(12 + 12 * p) | buffer.getLong());
+                packed.putInt(20 + 12 * p, packed.getInt(20 + 12 * p) | buffer.getInt());
+            }
+            packed.put(8, buffer.get());
+            packed.put(9, buffer.get());
+            packed.put(11, buffer.get());
+            int removed = buffer.get() & 0xff;
+            if (removed != NO_REMOVAL) {
+                int size = packed.get(10) & 0xff;
+                for (int i = removed; i + 1 < size; i++) {
+                    packed.put(36 + i, packed.get(37 + i));
+                }
+                packed.put(10, (byte) (size - 1));
+            }
+            sequence = frameSequence;
+            return true;
+        }
+
+        /**
+         * Returns true once a keyframe was applied and no frame has been missed since.
+         *
+         * @return True if the view is in sync.
+         */
+        public boolean isSynchronized() {
+            return sequence >= 0;
+        }
+
+        /**
+         * Copies the state seen so far into a state of the same catalog.
+         *
+         * @param target The state to overwrite.
+         * @throws IllegalStateException if the view is not in sync.
+         */
+        public void read(GameState target) {
+            if (sequence < 0) {
+                throw new IllegalStateException("Waiting for a keyframe");
+            }
+            target.readFrom(packed, 0);
+        }
+    }
+}
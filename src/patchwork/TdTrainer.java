@@ -0,0 +1,206 @@
+package patchwork;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trains {@link LinearEvaluator} weights by TD(λ) self-play. Each worker thread
+ * plays whole episodes between two exploring {@link LinearAgent}s sharing the
+ * weights, and after every move nudges the weights towards the value of the
+ * following state, or the final margin once the game is over, along its own
+ * eligibility trace.
+ * <p>
+ * Workers update the shared weight array without locks (Hogwild): a lost
+ * update between threads only costs one small step, and with a handful of
+ * weights the threads never wait for each other, so episodes per second grow
+ * with the number of cores. Weights are saved to a checkpoint file every given
+ * number of episodes, and once more at the end.
+ */
+public final class TdTrainer {
+    private final PatchCatalog catalog; // The patches of the games.
+    private final int trackLength; // The number of positions of the time track.
+    private final double[] weights; // The shared weights, updated without locks.
+    private final double alpha; // Learning rate.
+    private final double lambda; // Trace decay.
+    private final double exploration; // Probability of a random action.
+    private final AtomicLong episodes = new AtomicLong(); // Episodes started.
+    private final Object checkpointLock = new Object(); // Serializes checkpoint writes.
+
+    /**
+     * Creates a trainer.
+     *
+     * @param catalog     The patches of the games.
+     * @param trackLength The number of positions of the time track.
+     * @param weights     The initial weights, or null to start from zero; they are copied.
+     * @param alpha       The learning rate, greater than 0.
+     * @param lambda      The trace decay, between 0 and 1.
+     * @param exploration The probability, between 0 and 1, of a random action.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    public TdTrainer(PatchCatalog catalog, int trackLength, double[] weights, double alpha, double lambda,
+            double exploration) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (trackLength < 1) {
+            throw new IllegalArgumentException("The track needs at least one position");
+        }
+        if (weights != null && weights.length != LinearEvaluator.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + LinearEvaluator.FEATURE_COUNT + " weights");
+        }
+        if (alpha <= 0 || lambda < 0 || lambda > 1 || exploration < 0 || exploration > 1) {
+            throw new IllegalArgumentException("Invalid learning parameters");
+        }
+        this.trackLength = trackLength;
+        this.weights = weights == null ? new double[LinearEvaluator.FEATURE_COUNT] : weights.clone();
+        this.alpha = alpha;
+        this.lambda = lambda;
+        this.exploration = exploration;
+    }
+
+    /**
+     * Returns a copy of the current weights.
+     *
+     * @return The weights.
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Returns the number of episodes started so far.
+     *
+     * @return The episode count.
+     */
+    public long getEpisodes() {
+        return episodes.get();
+    }
+
+    /**
+     * Plays episodes on several threads until the given total has been started
+     * by this trainer.
+     *
+     * @param total           The total number of episodes.
+     * @param threads         The number of worker threads.
+     * @param seed            The seed of the deals and exploration.
+     * @param checkpoint      The file the weights are saved to, or null for none.
+     * @param checkpointEvery The number of episodes between checkpoints.
+     * @throws IOException              if a checkpoint cannot be written.
+     * @throws InterruptedException     if the calling thread is interrupted while waiting.
+     * @throws IllegalArgumentException if the thread count or checkpoint interval is less than 1.
+     */
+    public void train(long total, int threads, long seed, Path checkpoint, long checkpointEvery)
+            throws IOException, InterruptedException {
+        if (threads < 1 || checkpointEvery < 1) {
+            throw new IllegalArgumentException("Threads and checkpoint interval must be at least 1");
+        }
+        var pool = GamePool.ofStates(catalog, trackLength);
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var workers = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                var random = new Random(seed * 31 + t);
+                workers.add(executor.submit(() -> {
+                    var trace = new double[LinearEvaluator.FEATURE_COUNT];
+                    var features = new double[LinearEvaluator.FEATURE_COUNT];
+                    var agent = new LinearAgent(weights, random, exploration);
+                    long episode;
+                    while ((episode = episodes.getAndIncrement()) < total) {
+                        var state = pool.acquire(seed ^ episode * 0x9e3779b97f4a7c15L);
+                        playEpisode(state, agent, trace, features);
+                        pool.release(state);
+                        if (checkpoint != null && (episode + 1) % checkpointEvery == 0) {
+                            save(checkpoint);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (var worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IllegalStateException("Training failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            episodes.getAndUpdate(count -> Math.min(count, total));
+        }
+        if (checkpoint != null) {
+            save(checkpoint);
+        }
+    }
+
+    // Plays one game to the end, updating the shared weights after every move.
+    private void playEpisode(GameState state, LinearAgent agent, double[] trace, double[] features) {
+        Arrays.fill(trace, 0);
+        LinearEvaluator.features(state, features);
+        double value = LinearEvaluator.evaluate(weights, features);
+        while (!state.isFinished()) {
+            for (int i = 0; i < trace.length; i++) {
+                trace[i] = lambda * trace[i] + features[i];
+            }
+            state.apply(agent.chooseMove(state));
+            double target;
+            if (state.isFinished()) {
+                target = state.getScoreMargin();
+            } else {
+                LinearEvaluator.features(state, features);
+                target = LinearEvaluator.evaluate(weights, features);
+            }
+            double step = alpha * (target - value);
+            for (int i = 0; i < trace.length; i++) {
+                weights[i] += step * trace[i];
+            }
+            value = state.isFinished() ? target : LinearEvaluator.evaluate(weights, features);
+        }
+    }
+
+    private void save(Path checkpoint) {
+        synchronized (checkpointLock) {
+            try {
+                LinearEvaluator.save(weights.clone(), checkpoint);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Trains weights on the patches of the data file, resuming from the
+     * checkpoint if it exists.
+     *
+     * @param args The checkpoint file, then optionally the number of episodes,
+     *             the number of threads and the track length.
+     * @throws Exception if training fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: TdTrainer <checkpoint> [episodes] [threads] [trackLength]");
+            return;
+        }
+        var checkpoint = Paths.get(args[0]);
+        long total = args.length > 1 ? Long.parseLong(args[1]) : 100_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int trackLength = args.length > 3 ? Integer.parseInt(args[3]) : 54;
+        var catalog = PatchCatalog.load(Paths.get("data/dataPatch.data"));
+        var initial = Files.exists(checkpoint) ? LinearEvaluator.load(checkpoint) : null;
+        var trainer = new TdTrainer(catalog, trackLength, initial, 1e-3, 0.7, 0.1);
+        long start = System.nanoTime();
+        trainer.train(total, threads, System.nanoTime(), checkpoint, Math.max(1, total / 20));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d episodes in %.1f s (%.0f per second)%n", total, seconds, total / seconds);
+        System.out.println(Arrays.toString(trainer.getWeights()));
+    }
+}
@@ -0,0 +1,445 @@
+package patchwork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Solves "fill the quilt" puzzles: places a subset of a set of patches on a
+ * 9x9 patchwork, each at most once, so as to cover as many squares as possible.
+ * <p>
+ * The search is exact cover over bitboards: the patchwork is an 81-bit mask
+ * held in two longs, every placement of every patch is precomputed as such a
+ * mask and indexed by its first square, and the search always decides the
+ * first undecided square, either by covering it with a placement that starts
+ * there or by leaving it empty. Branches that cannot beat the best coverage
+ * found so far are pruned. The upper levels of the tree are split into tasks of
+ * a fork-join pool, whose workers steal subtrees from each other; the search
+ * can be cancelled and reports improvements as they are found.
+ * <p>
+ * For puzzles that must be filled exactly, {@link #countExactCovers(int)}
+ * runs the same search without the option of leaving a square empty and
+ * counts the solutions up to a limit, which is enough to prove a puzzle has a
+ * unique solution.
+ */
+public final class TilingSolver {
+    private static final int SIZE = GameState.QUILT_SIZE;
+    private static final int CELLS = SIZE * SIZE;
+    private static final long HIGH_MASK = (1L << (CELLS - 64)) - 1; // Squares 64 to 80.
+    private static final int SPLIT_DEPTH = 3; // Levels of the tree, placements and skips, split into parallel tasks.
+
+    private final PatchCatalog catalog; // The patches the identifiers refer to.
+    private final int[] pieces; // Patch identifiers, largest first; equal identifiers are adjacent.
+    private final int[] areas; // Area of each piece.
+    private final long[][][] masks; // [piece][cell] -> placement masks starting at cell, low/high interleaved.
+    private final Placement[][][] placements; // [piece][cell] -> placements matching masks.
+    private final long blockedLow; // Squares 0 to 63 covered before solving.
+    private final long blockedHigh; // Squares 64 to 80 covered before solving.
+
+    private final AtomicInteger bestCoverage = new AtomicInteger(-1); // Squares covered by the best solution.
+    private final AtomicBoolean cancelled = new AtomicBoolean(); // Set to stop the search.
+    private final LongAdder nodes = new LongAdder(); // Nodes visited.
+    private volatile List<Placement> best = List.of(); // Placements of the best solution.
+    private volatile Consumer<Solution> listener = s -> { }; // Notified of each improvement.
+
+    /**
+     * A set of placements and the number of squares they cover.
+     */
+    public static final class Solution {
+        private final List<Placement> placements;
+        private final int coverage;
+        private final boolean complete;
+
+        private Solution(List<Placement> placements, int coverage, boolean complete) {
+            this.placements = List.copyOf(placements);
+            this.coverage = coverage;
+            this.complete = complete;
+        }
+
+        /**
+         * Returns the placements of the solution.
+         *
+         * @return The placements.
+         */
+        public List<Placement> getPlacements() {
+            return placements;
+        }
+
+        /**
+         * Returns the number of squares covered by the placements.
+         *
+         * @return The coverage.
+         */
+        public int getCoverage() {
+            return coverage;
+        }
+
+        /**
+         * Returns true if the search finished, so that the coverage is the best possible.
+         *
+         * @return True if the solution is optimal.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            return (complete ? "optimal" : "best so far") + " coverage " + coverage + ": " + placements;
+        }
+    }
+
+    /**
+     * Creates a solver for an empty patchwork.
+     *
+     * @param catalog  The patches the identifiers refer to.
+     * @param patchIds The identifiers of the available patches; an identifier may repeat.
+     * @throws IllegalArgumentException if more than 64 patches are given or an identifier is unknown.
+     */
+    public TilingSolver(PatchCatalog catalog, int[] patchIds) {
+        this(catalog, patchIds, new long[SIZE]);
+    }
+
+    /**
+     * Creates a solver for a partly covered patchwork.
+     *
+     * @param catalog  The patches the identifiers refer to.
+     * @param patchIds The identifiers of the available patches; an identifier may repeat.
+     * @param board    The covered squares of the patchwork, one mask per row.
+     * @throws IllegalArgumentException if more than 64 patches are given or an identifier is unknown.
+     */
+    public TilingSolver(PatchCatalog catalog, int[] patchIds, long[] board) {
+        this.catalog = Objects.requireNonNull(catalog, "Catalog cannot be null");
+        if (patchIds.length > 64) {
+            throw new IllegalArgumentException("At most 64 patches can be tiled");
+        }
+        for (int id : patchIds) {
+            if (id < 0 || id >= catalog.size()) {
+                throw new IllegalArgumentException("Unknown patch identifier: " + id);
+            }
+        }
+        this.pieces = Arrays.stream(patchIds).boxed()
+                .sorted(Comparator.comparingInt((Integer id) -> -catalog.getArea(id)).thenComparingInt(id -> id))
+                .mapToInt(Integer::intValue).toArray();
+        this.areas = Arrays.stream(pieces).map(catalog::getArea).toArray();
+
+        long low = 0;
+        long high = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if ((board[row] & 1L << col) != 0) {
+                    int cell = row * SIZE + col;
+                    if (cell < 64) {
+                        low |= 1L << cell;
+                    } else {
+                        high |= 1L << (cell - 64);
+                    }
+                }
+            }
+        }
+        this.blockedLow = low;
+        this.blockedHigh = high;
+
+        this.masks = new long[pieces.length][][];
+        this.placements = new Placement[pieces.length][][];
+        for (int k = 0; k < pieces.length; k++) {
+            indexPlacements(k);
+        }
+    }
+
+    // Precomputes every placement of a piece as a two-long mask, grouped by its first square.
+    private void indexPlacements(int k) {
+        var byCellMasks = new ArrayList<List<long[]>>();
+        var byCellPlacements = new ArrayList<List<Placement>>();
+        for (int cell = 0; cell < CELLS; cell++) {
+            byCellMasks.add(new ArrayList<>());
+            byCellPlacements.add(new ArrayList<>());
+        }
+        var orientations = catalog.orientations(pieces[k]);
+        for (int o = 0; o < orientations.size(); o++) {
+            var orientation = orientations.get(o);
+            for (int row = 0; row + orientation.getHeight() <= SIZE; row++) {
+                for (int col = 0; col + orientation.getWidth() <= SIZE; col++) {
+                    long low = 0;
+                    long high = 0;
+                    int first = -1;
+                    for (int i = 0; i < orientation.getHeight(); i++) {
+                        long bits = orientation.getRowMask(i) << col;
+                        while (bits != 0) {
+                            int cell = (row + i) * SIZE + Long.numberOfTrailingZeros(bits);
+                            bits &= bits - 1;
+                            if (first < 0) {
+                                first = cell;
+                            }
+                            if (cell < 64) {
+                                low |= 1L << cell;
+                            } else {
+                                high |= 1L << (cell - 64);
+                            }
+                        }
+                    }
+                    if ((low & blockedLow) == 0 && (high & blockedHigh) == 0) {
+                        byCellMasks.get(first).add(new long[] {low, high});
+                        byCellPlacements.get(first).add(new Placement(pieces[k], o, row, col));
+                    }
+                }
+            }
+        }
+        masks[k] = new long[CELLS][];
+        placements[k] = new Placement[CELLS][];
+        for (int cell = 0; cell < CELLS; cell++) {
+            var list = byCellMasks.get(cell);
+            masks[k][cell] = new long[2 * list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                masks[k][cell][2 * i] = list.get(i)[0];
+                masks[k][cell][2 * i + 1] = list.get(i)[1];
+            }
+            placements[k][cell] = byCellPlacements.get(cell).toArray(new Placement[0]);
+        }
+    }
+
+    /**
+     * Registers a listener notified, from a worker thread, of each improvement.
+     *
+     * @param listener The listener.
+     */
+    public void setProgressListener(Consumer<Solution> listener) {
+        this.listener = Objects.requireNonNull(listener, "Listener cannot be null");
+    }
+
+    /**
+     * Stops a running search; {@link #solve(ForkJoinPool)} then returns the best
+     * solution found so far.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Returns the number of positions visited so far.
+     *
+     * @return The number of nodes.
+     */
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    /**
+     * Returns the coverage of the best solution found so far.
+     *
+     * @return The best coverage, or -1 before the search starts.
+     */
+    public int getBestCoverage() {
+        return bestCoverage.get();
+    }
+
+    /**
+     * Runs the search on a fork-join pool and waits for it. A solver runs a
+     * single search.
+     *
+     * @param pool The pool running the search.
+     * @return The best solution; it is optimal unless the search was cancelled.
+     */
+    public Solution solve(ForkJoinPool pool) {
+        Objects.requireNonNull(pool, "Pool cannot be null");
+        int totalArea = Arrays.stream(areas).sum();
+        int covered = Long.bitCount(blockedLow) + Long.bitCount(blockedHigh);
+        improve(new int[0], 0, covered);
+        pool.invoke(new Subtree(blockedLow, blockedHigh, 0L, covered, totalArea, new int[0], 0));
+        // The search only stops early once the whole patchwork is covered, which is optimal.
+        boolean complete = !cancelled.get() || bestCoverage.get() == CELLS;
+        return new Solution(best, bestCoverage.get(), complete);
+    }
+
+    /**
+     * Counts the ways of covering every empty square of the patchwork with all
+     * the patches, each exactly once, stopping as soon as the limit is reached.
+     * Copies of the same patch are interchangeable and do not multiply the
+     * count. The search runs on the calling thread and its nodes are added to
+     * {@link #getNodes()}.
+     *
+     * @param limit The count at which to stop, such as 2 to check that a solution is unique.
+     * @return The number of exact covers, at most the limit.
+     * @throws IllegalArgumentException if the limit is less than 1.
+     */
+    public int countExactCovers(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        int empty = CELLS - Long.bitCount(blockedLow) - Long.bitCount(blockedHigh);
+        if (Arrays.stream(areas).sum() != empty) {
+            return 0;
+        }
+        return countCovers(blockedLow, blockedHigh, 0L, limit, 0);
+    }
+
+    // Covers the first empty square with each fitting placement; every square must be covered.
+    private int countCovers(long low, long high, long used, int limit, int found) {
+        nodes.increment();
+        int cell = firstUndecided(low, high);
+        if (cell < 0) {
+            return found + 1;
+        }
+        for (int k = 0; k < pieces.length; k++) {
+            if (!available(used, k)) {
+                continue;
+            }
+            long[] cellMasks = masks[k][cell];
+            for (int i = 0; i < cellMasks.length; i += 2) {
+                if ((cellMasks[i] & low) == 0 && (cellMasks[i + 1] & high) == 0) {
+                    found = countCovers(low | cellMasks[i], high | cellMasks[i + 1], used | 1L << k, limit, found);
+                    if (found >= limit) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private final class Subtree extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long low; // Decided squares 0 to 63.
+        private final long high; // Decided squares 64 to 80.
+        private final long used; // Pieces already placed.
+        private final int covered; // Squares covered.
+        private final int remainingArea; // Area of the unused pieces.
+        private final int[] path; // Placements so far, packed by encode.
+        private final int level; // Levels of the tree above this task, skipped squares included.
+
+        private Subtree(long low, long high, long used, int covered, int remainingArea, int[] path, int level) {
+            this.low = low;
+            this.high = high;
+            this.used = used;
+            this.covered = covered;
+            this.remainingArea = remainingArea;
+            this.path = path;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.get()) {
+                return;
+            }
+            if (level >= SPLIT_DEPTH) {
+                int[] stack = Arrays.copyOf(path, CELLS);
+                search(low, high, used, covered, remainingArea, stack, path.length);
+                return;
+            }
+            nodes.increment();
+            int cell = firstUndecided(low, high);
+            if (cell < 0) {
+                improve(path, path.length, covered);
+                return;
+            }
+            if (!promising(low, high, covered, remainingArea)) {
+                return;
+            }
+            var children = new ArrayList<Subtree>();
+            for (int k = 0; k < pieces.length; k++) {
+                if (!available(used, k)) {
+                    continue;
+                }
+                long[] cellMasks = masks[k][cell];
+                for (int i = 0; i < cellMasks.length; i += 2) {
+                    if ((cellMasks[i] & low) == 0 && (cellMasks[i + 1] & high) == 0) {
+                        int[] next = Arrays.copyOf(path, path.length + 1);
+                        next[path.length] = encode(k, cell, i / 2);
+                        children.add(new Subtree(low | cellMasks[i], high | cellMasks[i + 1], used | 1L << k,
+                                covered + areas[k], remainingArea - areas[k], next, level + 1));
+                    }
+                }
+            }
+            long skippedLow = cell < 64 ? low | 1L << cell : low;
+            long skippedHigh = cell < 64 ? high : high | 1L << (cell - 64);
+            children.add(new Subtree(skippedLow, skippedHigh, used, covered, remainingArea, path, level + 1));
+            invokeAll(children);
+        }
+    }
+
+    private void search(long low, long high, long used, int covered, int remainingArea, int[] stack, int depth) {
+        if (cancelled.get()) {
+            return;
+        }
+        nodes.increment();
+        int cell = firstUndecided(low, high);
+        if (cell < 0) {
+            improve(stack, depth, covered);
+            return;
+        }
+        if (!promising(low, high, covered, remainingArea)) {
+            return;
+        }
+        for (int k = 0; k < pieces.length; k++) {
+            if (!available(used, k)) {
+                continue;
+            }
+            long[] cellMasks = masks[k][cell];
+            for (int i = 0; i < cellMasks.length; i += 2) {
+                if ((cellMasks[i] & low) == 0 && (cellMasks[i + 1] & high) == 0) {
+                    stack[depth] = encode(k, cell, i / 2);
+                    search(low | cellMasks[i], high | cellMasks[i + 1], used | 1L << k, covered + areas[k],
+                            remainingArea - areas[k], stack, depth + 1);
+                }
+            }
+        }
+        if (cell < 64) {
+            search(low | 1L << cell, high, used, covered, remainingArea, stack, depth);
+        } else {
+            search(low, high | 1L << (cell - 64), used, covered, remainingArea, stack, depth);
+        }
+    }
+
+    // A piece is available if unused and, among copies of the same patch, the previous copy is used.
+    private boolean available(long used, int k) {
+        if ((used & 1L << k) != 0) {
+            return false;
+        }
+        return k == 0 || pieces[k - 1] != pieces[k] || (used & 1L << (k - 1)) != 0;
+    }
+
+    private boolean promising(long low, long high, int covered, int remainingArea) {
+        int undecided = CELLS - Long.bitCount(low) - Long.bitCount(high);
+        return covered + Math.min(undecided, remainingArea) > bestCoverage.get();
+    }
+
+    private static int firstUndecided(long low, long high) {
+        if (low != -1L) {
+            return Long.numberOfTrailingZeros(~low);
+        }
+        long free = ~high & HIGH_MASK;
+        return free == 0 ? -1 : 64 + Long.numberOfTrailingZeros(free);
+    }
+
+    private static int encode(int piece, int cell, int index) {
+        return piece << 20 | cell << 12 | index;
+    }
+
+    private void improve(int[] path, int length, int covered) {
+        synchronized (this) {
+            if (covered <= bestCoverage.get()) {
+                return;
+            }
+            var result = new ArrayList<Placement>(length);
+            for (int i = 0; i < length; i++) {
+                result.add(placements[path[i] >>> 20][(path[i] >>> 12) & 255][path[i] & 4095]);
+            }
+            best = List.copyOf(result);
+            bestCoverage.set(covered);
+        }
+        if (covered == CELLS) {
+            cancelled.set(true);
+        }
+        listener.accept(new Solution(best, covered, false));
+    }
+}
@@ -8,9 +8,25 @@ import java.util.Arrays;
  * square grid of integers from 0 to (size^2 - 1), where size is the length of
  * each side. The value at each cell represents the order in which a player can
  * take a turn.
+ * <p>
+ * The track also holds the events of the board game: a player crossing a
+ * button checkpoint receives their income, and the first player to cross a
+ * leather checkpoint takes a single-square leather patch. The checkpoints of
+ * the 54-space board are spread proportionally over tracks of other lengths.
  */
 public class TimeBoard {
+	/**
+	 * The number of positions of the track of the board game.
+	 */
+	public static final int STANDARD_LENGTH = 54;
+
+	private static final int[] STANDARD_PAYDAYS = {5, 11, 17, 23, 29, 35, 41, 47, 53}; // Button checkpoints.
+	private static final int[] STANDARD_LEATHER = {20, 26, 32, 44, 50}; // Leather patch checkpoints.
+
 	private final int[][] board;
+	private final int[] paydays; // Positions of the button checkpoints, ascending.
+	private final int[] leather; // Positions of the leather checkpoints, ascending.
+	private int leatherTaken; // Bit i is set once the leather patch at leather[i] was taken.
 
 	/**
 	 * Creates a new time board of the specified size.
@@ -23,6 +39,121 @@ public class TimeBoard {
 			throw new IllegalArgumentException("Size must be positive");
 		}
 		board = new int[size][size];
+		paydays = paydays(size * size);
+		leather = leatherCheckpoints(size * size);
+		reset();
+	}
+
+	/**
+	 * Returns the button checkpoints of a track: a player moving onto or past
+	 * one receives the income of their patchwork.
+	 *
+	 * @param trackLength the number of positions of the track
+	 * @return the positions of the checkpoints, ascending and distinct
+	 * @throws IllegalArgumentException if the track is empty
+	 */
+	public static int[] paydays(int trackLength) {
+		return scale(STANDARD_PAYDAYS, trackLength);
+	}
+
+	/**
+	 * Returns the leather checkpoints of a track: the first player to move onto
+	 * or past one places a single-square leather patch.
+	 *
+	 * @param trackLength the number of positions of the track
+	 * @return the positions of the checkpoints, ascending and distinct
+	 * @throws IllegalArgumentException if the track is empty
+	 */
+	public static int[] leatherCheckpoints(int trackLength) {
+		return scale(STANDARD_LEATHER, trackLength);
+	}
+
+	// Spreads standard positions over a track, dropping those that fall on the start or on another.
+	private static int[] scale(int[] standard, int trackLength) {
+		if (trackLength < 1) {
+			throw new IllegalArgumentException("Track length must be at least 1");
+		}
+		return Arrays.stream(standard).map(p -> p * (trackLength - 1) / (STANDARD_LENGTH - 1))
+				.filter(p -> p > 0).distinct().toArray();
+	}
+
+	/**
+	 * Returns the number of checkpoints passed by a move, those after its start
+	 * up to and including its end.
+	 *
+	 * @param checkpoints the positions of the checkpoints, ascending
+	 * @param from        the position the move starts from
+	 * @param to          the position the move ends on
+	 * @return the number of checkpoints passed
+	 */
+	public static int crossed(int[] checkpoints, int from, int to) {
+		int count = 0;
+		for (int checkpoint : checkpoints) {
+			if (checkpoint > from && checkpoint <= to) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of paydays a player at the given position has yet to
+	 * pass.
+	 *
+	 * @param position the position of the player
+	 * @return the number of paydays ahead
+	 */
+	public int getRemainingPaydays(int position) {
+		return crossed(paydays, position, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the number of paydays passed by a move.
+	 *
+	 * @param from the position the move starts from
+	 * @param to   the position the move ends on
+	 * @return the number of paydays passed
+	 */
+	public int paydaysCrossed(int from, int to) {
+		return crossed(paydays, from, to);
+	}
+
+	/**
+	 * Takes the leather patches still on the track between two positions, for
+	 * the player moving from one to the other.
+	 *
+	 * @param from the position the move starts from
+	 * @param to   the position the move ends on
+	 * @return the number of leather patches the player has to place
+	 */
+	public int takeLeather(int from, int to) {
+		int count = 0;
+		for (int i = 0; i < leather.length; i++) {
+			if (leather[i] > from && leather[i] <= to && (leatherTaken & 1 << i) == 0) {
+				leatherTaken |= 1 << i;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns which leather patches were taken, bit {@code i} standing for the
+	 * {@code i}-th leather checkpoint.
+	 *
+	 * @return the mask of the taken leather patches
+	 */
+	int getLeatherTaken() {
+		return leatherTaken;
+	}
+
+	/**
+	 * Restores the initial values of the time board grid and puts the leather
+	 * patches back, so that it can be reused for a new game.
+	 */
+	public void reset() {
+		leatherTaken = 0;
+		int size = board.length;
 		for (int i = 0; i < size; i++) {
 			for (int j = 0; j < size; j++) {
 				board[i][j] = i * size + j;
@@ -0,0 +1,38 @@
+package patchwork;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API implementation of {@link PurchaseScorer}. This class is only
+ * loaded when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorPurchaseScorer {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private VectorPurchaseScorer() {
+    }
+
+    static void scoreAll(int[] cost, int[] time, int[] income, int[] area, int size, int buttons, int paydays,
+            long[] placeable, float[] out) {
+        int i = 0;
+        int bound = INTS.loopBound(size);
+        for (; i < bound; i += INTS.length()) {
+            var c = IntVector.fromArray(INTS, cost, i);
+            var a = IntVector.fromArray(INTS, area, i);
+            var value = a.mul(2).add(IntVector.fromArray(INTS, income, i).mul(paydays)).sub(c);
+            var t = IntVector.fromArray(INTS, time, i).max(1);
+            var score = ((FloatVector) value.convert(VectorOperators.I2F, 0))
+                    .div((FloatVector) t.convert(VectorOperators.I2F, 0));
+            // The lanes of a vector lie in one placeable word, as the lane count divides 64.
+            var fits = VectorMask.fromLong(INTS, placeable[i >>> 6] >>> (i & 63));
+            var excluded = c.compare(VectorOperators.GT, buttons).or(a.compare(VectorOperators.EQ, 0)).or(fits.not());
+            score.blend(Float.NEGATIVE_INFINITY, excluded.cast(FLOATS)).intoArray(out, i);
+        }
+        PurchaseScorer.scoreRange(cost, time, income, area, i, size, buttons, paydays, placeable, out);
+    }
+}